@@ -1,12 +1,18 @@
 package alexnet;
 
 import alexnet.core.Tensor;
+import alexnet.data.Augmentation;
 import alexnet.data.DataLoader;
 import alexnet.data.DataLoader.Batch;
-import alexnet.loss.CrossEntropyLoss;
 import alexnet.network.AlexNet;
+import alexnet.network.Checkpoint;
+import alexnet.network.CheckpointWriter;
+import alexnet.network.DataParallelTrainer;
+import alexnet.network.PipelinedAlexNet;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 
 public class Main {
@@ -18,78 +24,114 @@ public class Main {
         int numEpochs = 5;
         double learningRate = 0.01;
         int numClasses = 1000; // 请根据数据集实际类数修改！
+        int checkpointEvery = 500; // 每隔多少个 batch 在后台保存一次参数
+        int checkpointsToKeep = 3;
+        int replicas = Integer.getInteger("alexnet.replicas", 1); // 数据并行的副本数，每个副本多占约 240MB 梯度
+        int microBatches = Integer.getInteger("alexnet.microBatches", 0); // 大于 0 时改为三段流水线训练（GPipe），每个 batch 切成这么多份
+        Path checkpointDir = Paths.get("checkpoints");
+        boolean useShardCache = true; // 预处理好的 uint8 分片落盘，数据集不变时跨运行复用
+        Path shardDir = Paths.get("cache", "shards");
+        long imageCacheBytes = 2L << 30; // 不用分片缓存时，在内存中缓存解码结果的字节预算
+        long augmentSeed = 42;
+
+        try (CheckpointWriter checkpoints = new CheckpointWriter(checkpointDir, "alexnet", checkpointsToKeep);
+             DataLoader loader = new DataLoader("E:\\Document\\DeepLearning\\dataset\\tiny-imagenet-200", imageWidth, imageHeight, channels)) {
+
+            if (useShardCache) {
+                loader.enableShardCache(shardDir);
+                System.out.println("Shard cache ready: " + loader.getShardCache().getRebuiltShards() + " shard(s) rebuilt");
+            } else {
+                loader.enableImageCache(imageCacheBytes);
+            }
 
-        try {
-            DataLoader loader = new DataLoader("E:\\Document\\DeepLearning\\dataset\\tiny-imagenet-200", imageWidth, imageHeight, channels);
-            AlexNet net = new AlexNet();
-            CrossEntropyLoss lossFn = new CrossEntropyLoss();
-
-            for (int epoch = 1; epoch <= numEpochs; epoch++) {
-                System.out.println("Epoch " + epoch + " starting...");
-                loader.shuffleData();
-
-                int batchCount = 0;
-                float totalLoss = 0;
-                int totalCorrect = 0;
-                int totalSamples = 0;
-
-                while (loader.hasNextBatch(batchSize)) {
-                    Batch batch = loader.nextBatch(batchSize);
-                    List<Tensor> images = batch.images;
-                    List<Integer> labels = batch.labels;
-
-                    for (int i = 0; i < images.size(); i++) {
-                        Tensor input = images.get(i);
-                        int trueLabel = labels.get(i);
-
-                        // One-hot 标签
-                        float[][][] labelData = new float[1][1][numClasses];
-                        labelData[0][0][trueLabel] = 1.0f;
-                        Tensor target = new Tensor(labelData);
+            // 数据增强在解码线程上对 uint8 图像进行
+            Augmentation augmentation = new Augmentation(augmentSeed);
+            augmentation.setRandomCrop(0.875f);
+            augmentation.setScaleJitter(0.9f, 1.1f);
+            augmentation.setFlipProbability(0.5f);
+            augmentation.setColorJitter(0.2f, 0.2f, 0.2f);
+            loader.setAugmentation(augmentation);
+
+            // 有 checkpoint 时从最近的一个继续训练
+            Path resume = checkpoints.latest();
+            AlexNet net = resume != null ? Checkpoint.load(resume) : new AlexNet();
+            if (resume != null) {
+                System.out.println("Resumed from " + resume);
+            }
+            DataParallelTrainer trainer = null;
+            // 流水线的各段线程随 try 结束关闭，训练异常退出时也一样
+            try (PipelinedAlexNet pipeline = microBatches > 0 ? new PipelinedAlexNet(net, 2) : null) {
+                if (pipeline != null) {
+                    pipeline.planBuffers((batchSize + microBatches - 1) / microBatches, channels, imageHeight, imageWidth);
+                    System.out.printf("Pipeline: %d stages, %d micro-batch(es) per batch, planned buffers: %.1f MB%n",
+                            pipeline.getStageCount(), microBatches, pipeline.getPlannedBytes() / 1048576.0);
+                } else {
+                    trainer = new DataParallelTrainer(net, replicas);
+                    trainer.planBuffers(batchSize, channels, imageHeight, imageWidth);
+                    System.out.printf("Planned activation/gradient buffers: %.1f MB across %d replica(s)%n",
+                            trainer.getPlannedBytes() / 1048576.0, replicas);
+                }
+                Tensor target = null;
+                long step = resume != null ? checkpoints.stepOf(resume) : 0;
+
+                for (int epoch = 1; epoch <= numEpochs; epoch++) {
+                    System.out.println("Epoch " + epoch + " starting...");
+                    loader.shuffleData();
+
+                    int batchCount = 0;
+                    float totalLoss = 0;
+                    int totalCorrect = 0;
+                    int totalSamples = 0;
+
+                    while (loader.hasNextBatch(batchSize)) {
+                        Batch batch = loader.nextBatch(batchSize);
+                        Tensor input = batch.input; // [N][3][H][W]，由后台线程预先解码
+                        List<Integer> labels = batch.labels;
+                        int n = labels.size();
+
+                        // One-hot 标签 [N][1][1][numClasses]
+                        target = Tensor.reuse(target, n, 1, 1, numClasses);
+                        target.fill(0);
+                        for (int i = 0; i < n; i++) {
+                            target.set(i, 0, 0, labels.get(i), 1.0f);
+                        }
 
-                        // Forward → loss
-                        Tensor output = net.forward(input);
-                        float loss = lossFn.forward(output, target);
-                        totalLoss += loss;
+                        // 各副本并行前向、反向，归约梯度后只更新一次参数；流水线模式下各段流水执行，flush 后各段更新
+                        float loss = pipeline != null ? pipeline.step(input, target, microBatches, learningRate)
+                                : trainer.step(input, target, learningRate);
+                        totalLoss += loss * n;
 
                         // Accuracy
-                        int predicted = argMax(output);
-                        if (predicted == trueLabel) {
-                            totalCorrect++;
+                        int[] predictions = pipeline != null ? pipeline.getPredictions() : trainer.getPredictions();
+                        for (int i = 0; i < n; i++) {
+                            if (predictions[i] == labels.get(i)) {
+                                totalCorrect++;
+                            }
                         }
+                        step++;
 
-                        // Backward
-                        Tensor gradLoss = lossFn.backward(output, target);
-                        net.backward(gradLoss, learningRate);
+                        // 参数已更新完、下一次前向之前拍快照，写文件在后台进行
+                        if (step % checkpointEvery == 0 && !checkpoints.save(net, step)) {
+                            System.out.println("Checkpoint at step " + step + " skipped: previous write still running");
+                        }
+
+                        totalSamples += n;
 
-                        totalSamples++;
+                        batchCount++;
+                        System.out.println("Batch " + batchCount + " processed");
                     }
 
-                    batchCount++;
-                    System.out.println("Batch " + batchCount + " processed");
+                    float avgLoss = totalLoss / totalSamples;
+                    float accuracy = (float) totalCorrect / totalSamples * 100;
+                    System.out.printf("Epoch %d completed. Avg Loss: %.4f | Accuracy: %.2f%%\n", epoch, avgLoss, accuracy);
+                    if (loader.getImageCache() != null) {
+                        System.out.println("Image cache: " + loader.getImageCache());
+                    }
                 }
-
-                float avgLoss = totalLoss / totalSamples;
-                float accuracy = (float) totalCorrect / totalSamples * 100;
-                System.out.printf("Epoch %d completed. Avg Loss: %.4f | Accuracy: %.2f%%\n", epoch, avgLoss, accuracy);
             }
 
         } catch (IOException e) {
             System.err.println("Failed to load dataset: " + e.getMessage());
         }
     }
-
-    private static int argMax(Tensor output) {
-        float[][][] data = output.getData();
-        float[] flat = data[0][0];
-        int maxIdx = 0;
-        float maxVal = flat[0];
-        for (int i = 1; i < flat.length; i++) {
-            if (flat[i] > maxVal) {
-                maxVal = flat[i];
-                maxIdx = i;
-            }
-        }
-        return maxIdx;
-    }
 }
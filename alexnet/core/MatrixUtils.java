@@ -1,7 +1,14 @@
 package alexnet.core;
 
+import java.util.Arrays;
+
 public class MatrixUtils {
 
+    // 平铺 GEMM 的分块大小：B 的 KC×NC 子块约 256KB，可常驻 L2
+    private static final int BLOCK_M = 64;
+    private static final int BLOCK_K = 128;
+    private static final int BLOCK_N = 512;
+
     /**
      * 矩阵乘法： A[m×n] * B[n×p] = C[m×p]
      * @param A 左矩阵
@@ -19,13 +26,11 @@ public class MatrixUtils {
 
         float[][] C = new float[m][p];
 
+        // i-k-j 顺序：内层是对 C 的一整行做 axpy，可以向量化
+        VectorOps ops = VectorOps.get();
         for (int i = 0; i < m; i++) {
-            for (int j = 0; j < p; j++) {
-                float sum = 0;
-                for (int k = 0; k < n; k++) {
-                    sum += A[i][k] * B[k][j];
-                }
-                C[i][j] = sum;
+            for (int k = 0; k < n; k++) {
+                ops.axpy(A[i][k], B[k], 0, C[i], 0, p);
             }
         }
         return C;
@@ -63,10 +68,9 @@ public class MatrixUtils {
         }
 
         float[][] C = new float[m][n];
+        VectorOps ops = VectorOps.get();
         for (int i = 0; i < m; i++) {
-            for (int j = 0; j < n; j++) {
-                C[i][j] = A[i][j] + B[i][j];
-            }
+            ops.add(A[i], 0, B[i], 0, C[i], 0, n);
         }
         return C;
     }
@@ -86,10 +90,9 @@ public class MatrixUtils {
         }
 
         float[][] C = new float[m][n];
+        VectorOps ops = VectorOps.get();
         for (int i = 0; i < m; i++) {
-            for (int j = 0; j < n; j++) {
-                C[i][j] = A[i][j] * B[i][j];
-            }
+            ops.mul(A[i], 0, B[i], 0, C[i], 0, n);
         }
         return C;
     }
@@ -103,4 +106,95 @@ public class MatrixUtils {
     public static float[][] zeros(int rows, int cols) {
         return new float[rows][cols];
     }
+
+    /**
+     * 分块矩阵乘法（行优先平铺存储）：C[m×n] (+)= A[m×k] * B[k×n]
+     * @param accumulate true 时累加到 C，false 时覆盖 C
+     */
+    public static void gemm(float[] A, int aOff, float[] B, int bOff, float[] C, int cOff,
+                            int m, int n, int k, boolean accumulate) {
+        if (!accumulate) {
+            Arrays.fill(C, cOff, cOff + m * n, 0f);
+        }
+        VectorOps ops = VectorOps.get();
+        for (int kk = 0; kk < k; kk += BLOCK_K) {
+            int kEnd = Math.min(kk + BLOCK_K, k);
+            for (int jj = 0; jj < n; jj += BLOCK_N) {
+                int jEnd = Math.min(jj + BLOCK_N, n);
+                for (int i = 0; i < m; i++) {
+                    int aRow = aOff + i * k;
+                    int cRow = cOff + i * n;
+                    for (int p = kk; p < kEnd; p++) {
+                        float a = A[aRow + p];
+                        if (a == 0f) continue;
+                        ops.axpy(a, B, bOff + p * n + jj, C, cRow + jj, jEnd - jj);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 分块矩阵乘法，B 取转置：C[m×n] (+)= A[m×k] * B[n×k]^T
+     * @param accumulate true 时累加到 C，false 时覆盖 C
+     */
+    public static void gemmNT(float[] A, int aOff, float[] B, int bOff, float[] C, int cOff,
+                              int m, int n, int k, boolean accumulate) {
+        if (!accumulate) {
+            Arrays.fill(C, cOff, cOff + m * n, 0f);
+        }
+        VectorOps ops = VectorOps.get();
+        for (int kk = 0; kk < k; kk += BLOCK_N) {
+            int kEnd = Math.min(kk + BLOCK_N, k);
+            for (int ii = 0; ii < m; ii += BLOCK_M) {
+                int iEnd = Math.min(ii + BLOCK_M, m);
+                for (int j = 0; j < n; j++) {
+                    int bRow = bOff + j * k;
+                    for (int i = ii; i < iEnd; i++) {
+                        C[cOff + i * n + j] += ops.dot(A, aOff + i * k + kk, B, bRow + kk, kEnd - kk);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 分块矩阵乘法，A 取转置：C[m×n] (+)= A[k×m]^T * B[k×n]
+     * @param accumulate true 时累加到 C，false 时覆盖 C
+     */
+    public static void gemmTN(float[] A, int aOff, float[] B, int bOff, float[] C, int cOff,
+                              int m, int n, int k, boolean accumulate) {
+        if (!accumulate) {
+            Arrays.fill(C, cOff, cOff + m * n, 0f);
+        }
+        VectorOps ops = VectorOps.get();
+        for (int ii = 0; ii < m; ii += BLOCK_M) {
+            int iEnd = Math.min(ii + BLOCK_M, m);
+            for (int jj = 0; jj < n; jj += BLOCK_N) {
+                int jEnd = Math.min(jj + BLOCK_N, n);
+                for (int p = 0; p < k; p++) {
+                    int aRow = aOff + p * m;
+                    int bRow = bOff + p * n;
+                    for (int i = ii; i < iEnd; i++) {
+                        float a = A[aRow + i];
+                        if (a == 0f) continue;
+                        ops.axpy(a, B, bRow + jj, C, cOff + i * n + jj, jEnd - jj);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 矩阵向量乘（行优先平铺存储）：y[m] (+)= A[m×n] * x[n]
+     * @param accumulate true 时累加到 y，false 时覆盖 y
+     */
+    public static void gemv(float[] A, int aOff, float[] x, int xOff, float[] y, int yOff,
+                            int m, int n, boolean accumulate) {
+        VectorOps ops = VectorOps.get();
+        for (int i = 0; i < m; i++) {
+            float dot = ops.dot(A, aOff + i * n, x, xOff, n);
+            y[yOff + i] = accumulate ? y[yOff + i] + dot : dot;
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package alexnet.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 全局共享的 ForkJoinPool 与按区间切分的并行循环。
+ * 线程数默认取 CPU 核数，可用系统属性 -Dalexnet.threads=N 覆盖。
+ */
+public class Parallel {
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Integer.getInteger("alexnet.threads", Runtime.getRuntime().availableProcessors()));
+
+    public static ForkJoinPool pool() {
+        return POOL;
+    }
+
+    public static int parallelism() {
+        return POOL.getParallelism();
+    }
+
+    /**
+     * 区间任务：处理 [start, end)
+     */
+    public interface RangeBody {
+        void run(int start, int end);
+    }
+
+    /**
+     * 把 [0, count) 切成若干连续块在共享线程池上执行，阻塞直到全部完成。
+     * 每块至少 grain 个元素；块的划分只与 count、grain 和线程数有关，各块写入的区域应互不重叠。
+     */
+    public static void forRange(int count, int grain, RangeBody body) {
+        if (count <= 0) return;
+        int chunks = Math.min(parallelism() * 4, (count + grain - 1) / Math.max(1, grain));
+        if (chunks <= 1) {
+            body.run(0, count);
+            return;
+        }
+        int chunkSize = (count + chunks - 1) / chunks;
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int start = 0; start < count; start += chunkSize) {
+            int s = start;
+            int e = Math.min(count, start + chunkSize);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    body.run(s, e);
+                }
+            });
+        }
+        if (ForkJoinTask.getPool() == POOL) {
+            RecursiveAction.invokeAll(tasks);
+        } else {
+            POOL.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+    }
+}
@@ -1,30 +1,113 @@
 package alexnet.core;
 
 import java.util.Arrays;
+import java.util.List;
 
+/**
+ * 四维张量 [N][C][H][W]，底层为一段连续的 float[]，按行优先 (NCHW) 存放。
+ * 元素 (n, c, h, w) 位于 data[offset + n * sampleStride + c * channelStride + h * rowStride + w]。
+ * 热点循环请直接用 {@link #getBuffer()} / {@link #index(int, int, int, int)} 按平铺下标访问，
+ * 避免多级数组的指针跳转与重复的边界检查。
+ * 三参数的构造函数与访问器对应 N = 1 的单样本张量。
+ * <p>
+ * {@link #wrap} 直接接管调用方的数组，{@link #reshape} / {@link #slice} 返回共享存储的视图，三者都不拷贝数据；
+ * 通过视图写入会反映到所有共享这段存储的张量上。
+ */
 public class Tensor {
-    private final float[][][] data;
+    private final float[] data;
+    private final int offset;
+    private final int batch;
     private final int channels;
     private final int height;
     private final int width;
 
+    // 步长（以 float 为单位），宽度方向步长恒为 1
+    private final int sampleStride;
+    private final int channelStride;
+    private final int rowStride;
+
     public Tensor(int channels, int height, int width) {
-        this.channels = channels;
-        this.height = height;
-        this.width = width;
-        this.data = new float[channels][height][width];
+        this(1, channels, height, width);
+    }
+
+    public Tensor(int batch, int channels, int height, int width) {
+        this(new float[batch * channels * height * width], 0, batch, channels, height, width);
     }
 
+    /**
+     * 按 [C][H][W] 深拷贝多级数组；热点路径请直接填充平铺数组再用 {@link #wrap}
+     */
     public Tensor(float[][][] data) {
-        this.channels = data.length;
-        this.height = data[0].length;
-        this.width = data[0][0].length;
-        this.data = new float[channels][height][width];
+        this(data.length, data[0].length, data[0][0].length);
         for (int c = 0; c < channels; c++) {
             for (int h = 0; h < height; h++) {
-                System.arraycopy(data[c][h], 0, this.data[c][h], 0, width);
+                System.arraycopy(data[c][h], 0, this.data, index(c, h, 0), width);
+            }
+        }
+    }
+
+    Tensor(float[] data, int offset, int batch, int channels, int height, int width) {
+        if (offset < 0 || offset + batch * channels * height * width > data.length) {
+            throw new IllegalArgumentException("存储长度不足: " + data.length + " < " + offset
+                    + " + " + batch + "*" + channels + "*" + height + "*" + width);
+        }
+        this.data = data;
+        this.offset = offset;
+        this.batch = batch;
+        this.channels = channels;
+        this.height = height;
+        this.width = width;
+        this.rowStride = width;
+        this.channelStride = height * width;
+        this.sampleStride = channels * height * width;
+    }
+
+    /**
+     * 接管 data 作为 [batch][channels][height][width] 张量的存储，不拷贝；调用方此后不应再把该数组挪作他用
+     */
+    public static Tensor wrap(float[] data, int batch, int channels, int height, int width) {
+        return new Tensor(data, 0, batch, channels, height, width);
+    }
+
+    /**
+     * 以 data[offset ...] 作为 [batch][channels][height][width] 张量的存储，不拷贝
+     */
+    public static Tensor wrap(float[] data, int offset, int batch, int channels, int height, int width) {
+        return new Tensor(data, offset, batch, channels, height, width);
+    }
+
+    /**
+     * 形状为 [batch][channels][height][width] 时直接返回 buffer（内容不清零），否则新分配一个张量。
+     * 层用它复用 {@link TensorArena} 绑定的输出与梯度缓冲区，批大小变化（如最后一个不满的 batch）时退回临时分配。
+     */
+    public static Tensor reuse(Tensor buffer, int batch, int channels, int height, int width) {
+        if (buffer != null && buffer.batch == batch && buffer.channels == channels
+                && buffer.height == height && buffer.width == width) {
+            return buffer;
+        }
+        return new Tensor(batch, channels, height, width);
+    }
+
+    /**
+     * 把若干形状相同的单样本张量拼成一个 [N][C][H][W] 批张量
+     */
+    public static Tensor stack(List<Tensor> samples) {
+        Tensor first = samples.get(0);
+        Tensor out = new Tensor(samples.size(), first.channels, first.height, first.width);
+        int stride = out.sampleStride;
+        for (int n = 0; n < samples.size(); n++) {
+            Tensor s = samples.get(n);
+            if (s.size() != stride) {
+                throw new IllegalArgumentException("样本形状不一致: " + s.getShapeString()
+                        + " vs " + first.getShapeString());
             }
+            System.arraycopy(s.data, s.offset, out.data, n * stride, stride);
         }
+        return out;
+    }
+
+    public int getBatch() {
+        return batch;
     }
 
     public int getChannels() {
@@ -39,48 +122,134 @@ public class Tensor {
         return width;
     }
 
-    public float get(int c, int h, int w) {
-        return data[c][h][w];
+    /**
+     * 元素总数 N*C*H*W
+     */
+    public int size() {
+        return batch * sampleStride;
     }
 
-    public void set(int c, int h, int w, float value) {
-        data[c][h][w] = value;
+    /**
+     * 单个样本的元素数 C*H*W
+     */
+    public int sampleSize() {
+        return sampleStride;
     }
 
-    public float[][][] getData() {
+    public int getSampleStride() {
+        return sampleStride;
+    }
+
+    public int getChannelStride() {
+        return channelStride;
+    }
+
+    public int getRowStride() {
+        return rowStride;
+    }
+
+    /**
+     * 底层存储（可能被其它张量共享），有效数据从 {@link #getOffset()} 开始
+     */
+    public float[] getBuffer() {
         return data;
     }
 
-    public Tensor copy() {
-        return new Tensor(this.data);
+    public int getOffset() {
+        return offset;
     }
 
-    public void fill(float value) {
+    /**
+     * (n, c, h, w) 在底层存储中的平铺下标
+     */
+    public int index(int n, int c, int h, int w) {
+        return offset + n * sampleStride + c * channelStride + h * rowStride + w;
+    }
+
+    public int index(int c, int h, int w) {
+        return index(0, c, h, w);
+    }
+
+    public float get(int n, int c, int h, int w) {
+        return data[index(n, c, h, w)];
+    }
+
+    public float get(int c, int h, int w) {
+        return data[index(c, h, w)];
+    }
+
+    public void set(int n, int c, int h, int w, float value) {
+        data[index(n, c, h, w)] = value;
+    }
+
+    public void set(int c, int h, int w, float value) {
+        data[index(c, h, w)] = value;
+    }
+
+    /**
+     * 兼容视图：按 [C][H][W] 拷贝出第 0 个样本。
+     * 对返回数组的修改不会写回张量，写入请使用 {@link #set} 或 {@link #getBuffer()}。
+     */
+    public float[][][] getData() {
+        return getData(0);
+    }
+
+    /**
+     * 兼容视图：按 [C][H][W] 拷贝出第 n 个样本
+     */
+    public float[][][] getData(int n) {
+        float[][][] out = new float[channels][height][width];
         for (int c = 0; c < channels; c++) {
             for (int h = 0; h < height; h++) {
-                Arrays.fill(data[c][h], value);
+                System.arraycopy(data, index(n, c, h, 0), out[c][h], 0, width);
             }
         }
+        return out;
     }
 
-    public void addInPlace(Tensor other) {
-        for (int c = 0; c < channels; c++) {
-            for (int h = 0; h < height; h++) {
-                for (int w = 0; w < width; w++) {
-                    this.data[c][h][w] += other.data[c][h][w];
-                }
-            }
+    /**
+     * 元素总数不变时返回新形状的视图，与本张量共享存储
+     */
+    public Tensor reshape(int batch, int channels, int height, int width) {
+        if (batch * channels * height * width != size()) {
+            throw new IllegalArgumentException("reshape 前后元素数不一致: " + getShapeString() + " -> ["
+                    + batch + "][" + channels + "][" + height + "][" + width + "]");
+        }
+        if (batch == this.batch && channels == this.channels && height == this.height && width == this.width) {
+            return this;
+        }
+        return new Tensor(data, offset, batch, channels, height, width);
+    }
+
+    /**
+     * 第 start 到 start+count-1 个样本组成的视图，与本张量共享存储
+     */
+    public Tensor slice(int start, int count) {
+        if (start < 0 || count < 0 || start + count > batch) {
+            throw new IllegalArgumentException("样本区间越界: [" + start + ", " + (start + count) + ") 超出 batch " + batch);
         }
+        return new Tensor(data, offset + start * sampleStride, count, channels, height, width);
+    }
+
+    public Tensor copy() {
+        Tensor out = new Tensor(batch, channels, height, width);
+        System.arraycopy(data, offset, out.data, 0, size());
+        return out;
+    }
+
+    public void fill(float value) {
+        Arrays.fill(data, offset, offset + size(), value);
+    }
+
+    public void addInPlace(Tensor other) {
+        VectorOps.get().add(data, offset, other.data, other.offset, data, offset, size());
     }
 
     public Tensor apply(ReLUFunction func) {
-        Tensor out = new Tensor(channels, height, width);
-        for (int c = 0; c < channels; c++) {
-            for (int h = 0; h < height; h++) {
-                for (int w = 0; w < width; w++) {
-                    out.data[c][h][w] = func.apply(data[c][h][w]);
-                }
-            }
+        Tensor out = new Tensor(batch, channels, height, width);
+        int n = size();
+        for (int i = 0; i < n; i++) {
+            out.data[i] = func.apply(data[offset + i]);
         }
         return out;
     }
@@ -92,22 +261,22 @@ public class Tensor {
     @Override
     public String toString() {
         return "Tensor{" +
-                "channels=" + channels +
+                "batch=" + batch +
+                ", channels=" + channels +
                 ", height=" + height +
                 ", width=" + width +
                 '}';
     }
 
     public static boolean shapeEquals(Tensor a, Tensor b) {
-        float[][][] d1 = a.getData();
-        float[][][] d2 = b.getData();
-        return d1.length == d2.length &&
-                d1[0].length == d2[0].length &&
-                d1[0][0].length == d2[0][0].length;
+        return a.batch == b.batch &&
+                a.channels == b.channels &&
+                a.height == b.height &&
+                a.width == b.width;
     }
 
     public String getShapeString() {
-        return "[" + getChannels() + "][" + getHeight() + "][" + getWidth() + "]";
+        return "[" + getBatch() + "][" + getChannels() + "][" + getHeight() + "][" + getWidth() + "]";
     }
 
 }
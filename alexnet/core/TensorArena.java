@@ -0,0 +1,122 @@
+package alexnet.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按生命周期复用的张量缓冲区。
+ * 先用 {@link #reserve} 登记每个缓冲区的大小以及首次写入、最后一次读取的步骤编号，
+ * 再调用 {@link #allocate()}：按大小从大到小依次放到一整块 float[] 中最低的、与所有生命周期重叠的缓冲区都不冲突的位置。
+ * 生命周期不相交的缓冲区共用同一段存储，整块的长度即规划出的峰值占用；之后 {@link #tensor} 返回的都是这块存储上的视图。
+ * <p>
+ * 分配只在规划时做一次，迭代中不再产生新的数组。
+ */
+public class TensorArena {
+    private static final int ALIGN = 16;    // 每个缓冲区按 64 字节对齐，避免两个缓冲区共享缓存行
+
+    private final List<Block> blocks = new ArrayList<>();
+    private float[] slab;
+
+    private static class Block {
+        final int size;
+        final int firstStep;
+        final int lastStep;
+        int offset = -1;
+
+        Block(int size, int firstStep, int lastStep) {
+            this.size = size;
+            this.firstStep = firstStep;
+            this.lastStep = lastStep;
+        }
+
+        boolean livesWith(Block other) {
+            return firstStep <= other.lastStep && other.firstStep <= lastStep;
+        }
+
+        int end() {
+            return offset + size;
+        }
+    }
+
+    /**
+     * 登记一个缓冲区，在 [firstStep, lastStep] 这些步骤中它的内容必须保持有效
+     *
+     * @return 缓冲区编号，供 {@link #tensor} 使用
+     */
+    public int reserve(int size, int firstStep, int lastStep) {
+        if (slab != null) {
+            throw new IllegalStateException("arena 已经分配，不能再登记缓冲区");
+        }
+        if (size < 0 || lastStep < firstStep) {
+            throw new IllegalArgumentException("非法的缓冲区: size=" + size + ", steps=[" + firstStep + ", " + lastStep + "]");
+        }
+        blocks.add(new Block(size, firstStep, lastStep));
+        return blocks.size() - 1;
+    }
+
+    /**
+     * 为所有登记的缓冲区安排偏移并分配底层存储
+     */
+    public void allocate() {
+        List<Block> order = new ArrayList<>(blocks);
+        order.sort((a, b) -> Integer.compare(b.size, a.size));
+
+        List<Block> placed = new ArrayList<>();
+        int total = 0;
+        for (Block block : order) {
+            // 与之同时存活的已放置缓冲区按偏移排序，在它们之间找第一个放得下的空隙
+            List<Block> live = new ArrayList<>();
+            for (Block p : placed) {
+                if (p.livesWith(block)) live.add(p);
+            }
+            live.sort((a, b) -> Integer.compare(a.offset, b.offset));
+
+            int offset = 0;
+            for (Block p : live) {
+                if (offset + block.size <= p.offset) break;
+                offset = Math.max(offset, align(p.end()));
+            }
+            block.offset = offset;
+            placed.add(block);
+            total = Math.max(total, offset + block.size);
+        }
+        slab = new float[total];
+    }
+
+    /**
+     * 编号为 id 的缓冲区上的 [batch][channels][height][width] 视图
+     */
+    public Tensor tensor(int id, int batch, int channels, int height, int width) {
+        if (slab == null) {
+            throw new IllegalStateException("arena 尚未分配");
+        }
+        Block block = blocks.get(id);
+        if ((long) batch * channels * height * width > block.size) {
+            throw new IllegalArgumentException("形状 [" + batch + "][" + channels + "][" + height + "][" + width
+                    + "] 超出缓冲区大小 " + block.size);
+        }
+        return new Tensor(slab, block.offset, batch, channels, height, width);
+    }
+
+    /**
+     * 规划出的峰值占用（float 个数）
+     */
+    public int getCapacity() {
+        return slab == null ? 0 : slab.length;
+    }
+
+    /**
+     * 不复用时各缓冲区大小之和（float 个数），用于和 {@link #getCapacity()} 对比
+     */
+    public long getRequestedSize() {
+        long sum = 0;
+        for (Block block : blocks) {
+            sum += block.size;
+        }
+        return sum;
+    }
+
+    private static int align(int offset) {
+        return (offset + ALIGN - 1) / ALIGN * ALIGN;
+    }
+}
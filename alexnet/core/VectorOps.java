@@ -0,0 +1,64 @@
+package alexnet.core;
+
+/**
+ * 一维 float 数组上的基础算子，GEMM / GEMV / 权重更新 / 逐元素运算的内层循环都走这里。
+ * 启动时若能加载 jdk.incubator.vector 模块则使用 {@link SimdVectorOps}，否则退回 {@link ScalarVectorOps}。
+ * 启用 SIMD 需要编译与运行时都加上 --add-modules jdk.incubator.vector；-Dalexnet.simd=false 可强制使用标量实现。
+ */
+public interface VectorOps {
+
+    /**
+     * 当前进程选用的实现
+     */
+    static VectorOps get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Σ a[aOff + i] * b[bOff + i]，i ∈ [0, len)
+     */
+    float dot(float[] a, int aOff, float[] b, int bOff, int len);
+
+    /**
+     * y[yOff + i] += alpha * x[xOff + i]
+     */
+    void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int len);
+
+    /**
+     * out[outOff + i] = a[aOff + i] + b[bOff + i]
+     */
+    void add(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int len);
+
+    /**
+     * out[outOff + i] = a[aOff + i] * b[bOff + i]
+     */
+    void mul(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int len);
+
+    /**
+     * out[outOff + i] = max(0, x[xOff + i])
+     */
+    void relu(float[] x, int xOff, float[] out, int outOff, int len);
+
+    /**
+     * out[outOff + i] = x[xOff + i] > 0 ? grad[gOff + i] : 0
+     */
+    void reluBackward(float[] x, int xOff, float[] grad, int gOff, float[] out, int outOff, int len);
+
+    class Holder {
+        static final VectorOps INSTANCE = load();
+
+        private static VectorOps load() {
+            if (!Boolean.parseBoolean(System.getProperty("alexnet.simd", "true"))
+                    || !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                return new ScalarVectorOps();
+            }
+            try {
+                // 通过反射加载，未启用向量模块时标量路径不会链接到 jdk.incubator.vector
+                return (VectorOps) Class.forName("alexnet.core.SimdVectorOps")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return new ScalarVectorOps();
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package alexnet.data;
+
+import java.awt.Rectangle;
+import java.util.SplittableRandom;
+
+/**
+ * 训练时的在线数据增强：随机裁剪（含尺度抖动）、水平翻转、颜色抖动。
+ * <p>
+ * 全部在 uint8 的 {@link ByteImage} 上原地进行，由 DataLoader 的解码线程在转换成 float 之前执行，
+ * 逐像素只有算术，没有对象分配。每个样本的随机数只由 (seed, epoch, 样本编号) 决定，
+ * 与线程调度、打乱顺序无关，同样的配置重跑得到同样的输入。
+ */
+public class Augmentation {
+    private final long seed;
+
+    private float cropFraction = 1f;       // 裁剪边长占原图边长的比例
+    private float minScale = 1f;           // 尺度抖动：裁剪边长再乘以 [minScale, maxScale] 中的随机数
+    private float maxScale = 1f;
+    private float flipProbability = 0f;
+    private float brightness = 0f;         // 各颜色抖动因子取自 [1 - x, 1 + x]
+    private float contrast = 0f;
+    private float saturation = 0f;
+
+    public Augmentation(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * 随机裁剪：在原图内随机取边长为原图 fraction 倍的区域，再缩放到目标尺寸
+     */
+    public void setRandomCrop(float fraction) {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("裁剪比例必须在 (0, 1] 内: " + fraction);
+        }
+        this.cropFraction = fraction;
+    }
+
+    /**
+     * 尺度抖动：裁剪边长再乘以 [min, max] 中的随机数（超出原图时截断），相当于随机放大或缩小物体
+     */
+    public void setScaleJitter(float min, float max) {
+        if (!(min > 0 && min <= max)) {
+            throw new IllegalArgumentException("非法的尺度抖动范围: [" + min + ", " + max + "]");
+        }
+        this.minScale = min;
+        this.maxScale = max;
+    }
+
+    public void setFlipProbability(float probability) {
+        if (!(probability >= 0 && probability <= 1)) {
+            throw new IllegalArgumentException("翻转概率必须在 [0, 1] 内: " + probability);
+        }
+        this.flipProbability = probability;
+    }
+
+    /**
+     * 颜色抖动，三个参数均为相对幅度，0 表示不抖动
+     */
+    public void setColorJitter(float brightness, float contrast, float saturation) {
+        if (!(brightness >= 0 && brightness < 1 && contrast >= 0 && contrast < 1 && saturation >= 0 && saturation < 1)) {
+            throw new IllegalArgumentException("颜色抖动幅度必须在 [0, 1) 内: " + brightness + ", " + contrast + ", " + saturation);
+        }
+        this.brightness = brightness;
+        this.contrast = contrast;
+        this.saturation = saturation;
+    }
+
+    /**
+     * 是否需要裁剪；不需要时样本直接按整张图解码
+     */
+    public boolean crops() {
+        return cropFraction < 1f || minScale != 1f || maxScale != 1f;
+    }
+
+    /**
+     * 第 epoch 轮中样本 id 的随机源；同一样本依次调用 {@link #cropRegion} 与 {@link #apply}
+     */
+    public SplittableRandom random(int epoch, int id) {
+        long h = seed;
+        h = h * 0x9E3779B97F4A7C15L + epoch;
+        h = h * 0x9E3779B97F4A7C15L + id;
+        return new SplittableRandom(h);
+    }
+
+    /**
+     * 为 width×height 的图像选出裁剪区域；总是消耗相同个数的随机数，结果只取决于随机源与尺寸
+     */
+    public Rectangle cropRegion(SplittableRandom random, int width, int height) {
+        float scale = minScale + (maxScale - minScale) * (float) random.nextDouble();
+        double px = random.nextDouble();
+        double py = random.nextDouble();
+        float side = Math.min(1f, cropFraction * scale);
+        int w = Math.max(1, Math.round(width * side));
+        int h = Math.max(1, Math.round(height * side));
+        int x = (int) (px * (width - w + 1));
+        int y = (int) (py * (height - h + 1));
+        return new Rectangle(x, y, w, h);
+    }
+
+    /**
+     * 在 image 上原地做翻转与颜色抖动
+     */
+    public void apply(SplittableRandom random, ByteImage image) {
+        boolean flip = random.nextDouble() < flipProbability;
+        float b = 1f + brightness * (float) (2 * random.nextDouble() - 1);
+        float c = 1f + contrast * (float) (2 * random.nextDouble() - 1);
+        float s = 1f + saturation * (float) (2 * random.nextDouble() - 1);
+        if (flip) {
+            flipHorizontal(image);
+        }
+        if (b != 1f || c != 1f || s != 1f) {
+            jitter(image, b, c, s);
+        }
+    }
+
+    private static void flipHorizontal(ByteImage image) {
+        byte[] data = image.getData();
+        int w = image.getWidth();
+        int rows = image.getChannels() * image.getHeight();
+        for (int r = 0; r < rows; r++) {
+            int left = r * w;
+            int right = left + w - 1;
+            while (left < right) {
+                byte t = data[left];
+                data[left++] = data[right];
+                data[right--] = t;
+            }
+        }
+    }
+
+    /**
+     * 亮度缩放、以平均灰度为中心的对比度缩放、向像素灰度的饱和度插值，一遍完成。
+     * 亮度与对比度对每个取值都是同一个仿射变换，先做成 256 项的定点查找表（放大 256 倍），逐像素只剩整数运算
+     */
+    private static void jitter(ByteImage image, float brightness, float contrast, float saturation) {
+        byte[] data = image.getData();
+        int plane = image.getHeight() * image.getWidth();
+        boolean color = image.getChannels() > 1;
+        int g0 = color ? plane : 0;
+        int b0 = color ? 2 * plane : 0;
+
+        // 对比度的中心：亮度调整后的平均灰度
+        long sum = 0;
+        for (int i = 0; i < plane; i++) {
+            sum += 77 * (data[i] & 0xFF) + 150 * (data[g0 + i] & 0xFF) + 29 * (data[b0 + i] & 0xFF);
+        }
+        float mean = sum / (256f * plane) * brightness;
+        int[] lut = new int[256];
+        for (int v = 0; v < 256; v++) {
+            lut[v] = Math.round(((v * brightness - mean) * contrast + mean) * 256);
+        }
+
+        int sat = Math.round(saturation * 256);
+        if (!color || sat == 256) {
+            int n = image.size();
+            for (int i = 0; i < n; i++) {
+                data[i] = clamp(lut[data[i] & 0xFF]);
+            }
+            return;
+        }
+        for (int i = 0; i < plane; i++) {
+            int r = lut[data[i] & 0xFF];
+            int g = lut[data[g0 + i] & 0xFF];
+            int bl = lut[data[b0 + i] & 0xFF];
+            int gray = (77 * r + 150 * g + 29 * bl) >> 8;
+            data[i] = clamp(gray + (((r - gray) * sat) >> 8));
+            data[g0 + i] = clamp(gray + (((g - gray) * sat) >> 8));
+            data[b0 + i] = clamp(gray + (((bl - gray) * sat) >> 8));
+        }
+    }
+
+    /**
+     * 放大 256 倍的定点数四舍五入并截断到 [0, 255]
+     */
+    private static byte clamp(int scaled) {
+        int v = (scaled + 128) >> 8;
+        return (byte) (v < 0 ? 0 : Math.min(v, 255));
+    }
+}
@@ -0,0 +1,135 @@
+package alexnet.data;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 缩放后的 uint8 图像，按 CHW 平铺存放，每像素每通道 1 字节（float 张量的 1/4）。
+ * 用作解码结果在缓存、分片文件与数据增强之间传递的紧凑格式，转换成 float 推迟到写入 batch 时。
+ */
+public class ByteImage {
+    /**
+     * 训练与推理默认使用的重采样质量，与原先 Graphics2D.drawImage 的默认插值一致，已有模型的输入分布不变
+     */
+    public static final ImageResizer.Quality DEFAULT_QUALITY = ImageResizer.Quality.NEAREST;
+
+    private static final float[] UNIT = new float[256];     // v / 255
+
+    static {
+        for (int v = 0; v < 256; v++) {
+            UNIT[v] = v / 255.0f;
+        }
+    }
+
+    private final int channels;
+    private final int height;
+    private final int width;
+    private final byte[] data;
+
+    public ByteImage(int channels, int height, int width) {
+        this(channels, height, width, new byte[channels * height * width]);
+    }
+
+    /**
+     * 接管 data 作为存储，不拷贝
+     */
+    public ByteImage(int channels, int height, int width, byte[] data) {
+        if (data.length < channels * height * width) {
+            throw new IllegalArgumentException("存储长度不足: " + data.length + " < "
+                    + channels + "*" + height + "*" + width);
+        }
+        this.channels = channels;
+        this.height = height;
+        this.width = width;
+        this.data = data;
+    }
+
+    /**
+     * 读取并解码图像文件，缩放后写入 dst
+     */
+    public static void decode(File file, ByteImage dst) throws IOException {
+        decode(file, dst, DEFAULT_QUALITY);
+    }
+
+    public static void decode(File file, ByteImage dst, ImageResizer.Quality quality) throws IOException {
+        decode(file, dst, quality, null);
+    }
+
+    /**
+     * 只解码 region 选出的区域并缩放写入 dst。原图比目标大时解码阶段就隔行隔列取样：
+     * 最近邻只需保留目标尺寸的像素，双线性与区域平均保留两倍，让滤波仍有像素可平均
+     */
+    public static void decode(File file, ByteImage dst, ImageResizer.Quality quality, ImageDecoder.Region region)
+            throws IOException {
+        int oversample = quality == ImageResizer.Quality.NEAREST ? 1 : 2;
+        BufferedImage img = ImageDecoder.read(file, dst.width * oversample, dst.height * oversample, region);
+        fromImage(img, dst, quality);
+    }
+
+    /**
+     * 把 img 缩放到 width×height 后按 RGB 拆成 CHW 写入 dst；channels 为 1 时只取 R 通道
+     */
+    public static void fromImage(BufferedImage img, ByteImage dst) {
+        fromImage(img, dst, DEFAULT_QUALITY);
+    }
+
+    public static void fromImage(BufferedImage img, ByteImage dst, ImageResizer.Quality quality) {
+        ImageResizer.resize(img, dst, quality);
+    }
+
+    /**
+     * 归一化到 [0,1] 后写入 dst[offset ...]，布局不变
+     */
+    public void toFloat(float[] dst, int offset) {
+        int n = size();
+        for (int i = 0; i < n; i++) {
+            dst[offset + i] = UNIT[data[i] & 0xFF];
+        }
+    }
+
+    /**
+     * 归一化到 [0,1] 再按通道做 (x - mean) / std，一遍写入 dst[offset ...]。
+     * 每个通道只有 256 种取值，先算好查找表，逐元素只剩一次查表
+     */
+    public void toFloat(float[] dst, int offset, float[] mean, float[] std) {
+        if (mean.length < channels || std.length < channels) {
+            throw new IllegalArgumentException("均值/标准差的通道数不足: " + mean.length + ", " + std.length
+                    + " < " + channels);
+        }
+        float[] lut = new float[256];
+        int plane = height * width;
+        for (int c = 0; c < channels; c++) {
+            for (int v = 0; v < 256; v++) {
+                lut[v] = (UNIT[v] - mean[c]) / std[c];
+            }
+            int base = c * plane;
+            for (int i = 0; i < plane; i++) {
+                dst[offset + base + i] = lut[data[base + i] & 0xFF];
+            }
+        }
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int size() {
+        return channels * height * width;
+    }
+
+    /**
+     * 底层存储（可能比 size() 长）
+     */
+    public byte[] getData() {
+        return data;
+    }
+}
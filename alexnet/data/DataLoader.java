@@ -2,33 +2,92 @@ package alexnet.data;
 
 import alexnet.core.Tensor;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.awt.Graphics2D;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class DataLoader {
-    private List<File> imageFiles = new ArrayList<>();
-    private List<Integer> labels = new ArrayList<>();
+/**
+ * 图像数据集加载器，目录结构为 root/类名/images/*.jpg。
+ * 解码与缩放在后台线程池上流水线进行：训练线程取走一个 batch 时，后面 prefetch 个 batch 已在解码，
+ * 预取数量即背压上限，内存占用固定为 prefetch+1 个 batch 张量。用完需 {@link #close()}。
+ * <p>
+ * 样本按类目录名、文件名排序后编号，编号在整个生命周期内不变，打乱只改变访问顺序 order；
+ * 调用 {@link #enableShardCache} 后样本改从预处理好的 uint8 分片中读取，不再每个 epoch 重复解码。
+ * 设置 {@link Augmentation} 后，解码线程在转换成 float 之前对 uint8 图像做数据增强。
+ */
+public class DataLoader implements AutoCloseable {
+    private final List<File> imageFiles = new ArrayList<>();
+    private final List<Integer> labels = new ArrayList<>();
     private Map<String, Integer> labelMap = new HashMap<>();
+    private int[] order;                // 本 epoch 的访问顺序，元素为样本编号
+    private int epoch = -1;             // 每次 shuffleData 加一，参与数据增强的随机种子
     private int currentIndex = 0;
     private int imageWidth;
     private int imageHeight;
     private int channels;
 
+    // 预取流水线
+    private final int prefetch;
+    private final ExecutorService decodePool;
+    private final Deque<PendingBatch> pending = new ArrayDeque<>();
+    private final Deque<Tensor> freeTensors = new ArrayDeque<>();
+    private Batch delivered;            // 最近交给调用方的 batch
+    private int pipelineBatchSize = -1;
+    private int scheduledIndex;         // 已经提交解码的样本位置
+    private volatile int generation;    // 每次丢弃预取结果时加一，排队中的旧解码任务据此直接返回
+
+    private volatile ShardCache shardCache;
+    private volatile ImageCache imageCache;
+    private volatile ImageResizer.Quality resizeQuality = ByteImage.DEFAULT_QUALITY;
+    private final ThreadLocal<ByteImage> scratch;   // 每个解码线程一份 uint8 中间结果
+    private final ThreadLocal<ByteImage> cropped;   // 从缓存样本上裁剪缩放的结果
+    private volatile Augmentation augmentation;
+
     public DataLoader(String datasetPath, int imageWidth, int imageHeight, int channels) {
+        this(datasetPath, imageWidth, imageHeight, channels, Runtime.getRuntime().availableProcessors(), 2);
+    }
+
+    /**
+     * @param workers  解码线程数
+     * @param prefetch 提前解码的 batch 数
+     */
+    public DataLoader(String datasetPath, int imageWidth, int imageHeight, int channels, int workers, int prefetch) {
+        if (workers < 1 || prefetch < 1) {
+            throw new IllegalArgumentException("解码线程数与预取数必须为正: workers=" + workers + ", prefetch=" + prefetch);
+        }
         this.imageWidth = imageWidth;
         this.imageHeight = imageHeight;
         this.channels = channels;
+        this.prefetch = prefetch;
+        this.scratch = ThreadLocal.withInitial(() -> new ByteImage(channels, imageHeight, imageWidth));
+        this.cropped = ThreadLocal.withInitial(() -> new ByteImage(channels, imageHeight, imageWidth));
+        AtomicInteger threadId = new AtomicInteger();
+        this.decodePool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "data-loader-" + threadId.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
         loadDataset(new File(datasetPath));
+        order = new int[imageFiles.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
         shuffleData();
     }
 
     private void loadDataset(File root) {
         File[] classDirs = root.listFiles(File::isDirectory);
         if (classDirs == null) return;
+        // 排序后标签与样本编号不依赖文件系统的枚举顺序，分片缓存才能跨运行复用
+        Arrays.sort(classDirs, Comparator.comparing(File::getName));
 
         int labelIndex = 0;
         for (File classDir : classDirs) {
@@ -40,6 +99,7 @@ public class DataLoader {
                     name.toLowerCase().endsWith(".jpg") || name.toLowerCase().endsWith(".jpeg") || name.toLowerCase().endsWith(".png"));
 
             if (imageFilesInDir == null) continue;
+            Arrays.sort(imageFilesInDir, Comparator.comparing(File::getName));
 
             labelMap.put(className, labelIndex);
 
@@ -53,75 +113,260 @@ public class DataLoader {
     }
 
 
-    public void shuffleData() {
-        List<Integer> indices = new ArrayList<>();
-        for (int i = 0; i < imageFiles.size(); i++) {
-            indices.add(i);
+    /**
+     * 把全部样本预处理成 uint8 分片存到 directory，之后从内存映射的分片读取；
+     * 已有的分片只要对应文件未改动就直接复用，否则在解码线程池上重建
+     */
+    public void enableShardCache(Path directory) throws IOException {
+        cancelPipeline();
+        shardCache = ShardCache.open(directory, imageFiles, labels, imageWidth, imageHeight, channels,
+                resizeQuality, decodePool);
+    }
+
+    /**
+     * 在内存中缓存解码后的 uint8 图像，最多占用 budgetBytes 字节；适合几乎能装进内存、又不想落盘的数据集。
+     * 启用了分片缓存时样本直接从分片读取（由操作系统页缓存承担同样的作用），这一层不再生效
+     */
+    public void enableImageCache(long budgetBytes) {
+        cancelPipeline();
+        imageCache = new ImageCache(budgetBytes, imageFiles.size(), channels, imageHeight, imageWidth);
+    }
+
+    public ImageCache getImageCache() {
+        return imageCache;
+    }
+
+    /**
+     * 设置缩放算法，需在启用缓存之前调用；推理时用 {@link #toTensor} 预处理的输入按默认算法缩放
+     */
+    public void setResizeQuality(ImageResizer.Quality quality) {
+        if (shardCache != null || imageCache != null) {
+            throw new IllegalStateException("缓存启用后不能再修改缩放算法");
+        }
+        cancelPipeline();
+        resizeQuality = quality;
+    }
+
+    /**
+     * 设置训练时的数据增强，null 表示关闭；评估或推理时不应开启
+     */
+    public void setAugmentation(Augmentation augmentation) {
+        cancelPipeline();
+        this.augmentation = augmentation;
+    }
+
+    public ShardCache getShardCache() {
+        return shardCache;
+    }
+
+    public int size() {
+        return imageFiles.size();
+    }
+
+    /**
+     * 分布式训练时只取编号 id % count == index 的样本。各分片截断到相同长度，
+     * 保证所有 worker 每个 epoch 的 batch 数一致；编号只取决于排序后的文件列表，各进程算出的分片互不重叠
+     */
+    public void setShard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("非法的分片: " + index + " / " + count);
+        }
+        cancelPipeline();
+        int length = imageFiles.size() / count;
+        order = new int[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = i * count + index;
         }
-        Collections.shuffle(indices, new Random());
+        currentIndex = 0;
+        scheduledIndex = 0;
+    }
+
+    /**
+     * 本 loader 每个 epoch 遍历的样本数（启用分片时为分片大小）
+     */
+    public int epochSize() {
+        return order.length;
+    }
 
-        List<File> shuffledImages = new ArrayList<>();
-        List<Integer> shuffledLabels = new ArrayList<>();
-        for (int i : indices) {
-            shuffledImages.add(imageFiles.get(i));
-            shuffledLabels.add(labels.get(i));
+    public void shuffleData() {
+        cancelPipeline();
+        Random random = new Random();
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
         }
-        imageFiles = shuffledImages;
-        labels = shuffledLabels;
+        epoch++;
         currentIndex = 0;
+        scheduledIndex = 0;
     }
 
     public boolean hasNextBatch(int batchSize) {
-        return currentIndex + batchSize <= imageFiles.size();
+        return currentIndex + batchSize <= order.length;
     }
 
+    /**
+     * 取下一个 batch。解码在后台线程池上提前进行，最多领先 prefetch 个 batch；
+     * 返回的 batch 的张量在下一次调用 nextBatch 后会被复用，需要保留请先拷贝。
+     */
     public Batch nextBatch(int batchSize) throws IOException {
-        List<Tensor> batchImages = new ArrayList<>();
-        List<Integer> batchLabels = new ArrayList<>();
+        if (!hasNextBatch(batchSize)) {
+            throw new IllegalStateException("本 epoch 的数据已取完");
+        }
+        if (batchSize != pipelineBatchSize) {
+            restartPipeline(batchSize);
+        }
+        fillPipeline();
 
-        for (int i = 0; i < batchSize; i++) {
-            File imgFile = imageFiles.get(currentIndex);
-            BufferedImage img = ImageIO.read(imgFile);
-            Tensor tensor = preprocess(img);
-            batchImages.add(tensor);
-            batchLabels.add(labels.get(currentIndex));
-            currentIndex++;
+        PendingBatch head = pending.removeFirst();
+        try {
+            head.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待数据时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
         }
+        currentIndex += batchSize;
 
-        return new Batch(batchImages, batchLabels);
+        // 上一个交出去的 batch 此时已用完，其缓冲区回收给后面的 batch
+        if (delivered != null) freeTensors.addLast(delivered.input);
+        delivered = head.batch;
+        fillPipeline();
+        return head.batch;
     }
 
-    private Tensor preprocess(BufferedImage img) {
-        BufferedImage resized = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = resized.createGraphics();
-        g.drawImage(img, 0, 0, imageWidth, imageHeight, null);
-        g.dispose();
+    /**
+     * 按当前顺序把待解码的 batch 补足到 prefetch 个，每张图像是线程池上的一个任务
+     */
+    private void fillPipeline() {
+        while (pending.size() < prefetch && scheduledIndex + pipelineBatchSize <= order.length) {
+            int first = scheduledIndex;
+            int n = pipelineBatchSize;
+            Tensor input = freeTensors.isEmpty()
+                    ? new Tensor(n, channels, imageHeight, imageWidth) : freeTensors.removeFirst();
+            List<Tensor> images = new ArrayList<>(n);
+            List<Integer> batchLabels = new ArrayList<>(n);
+            CompletableFuture<?>[] tasks = new CompletableFuture<?>[n];
+            for (int i = 0; i < n; i++) {
+                int id = order[first + i];
+                Tensor slot = input.slice(i, 1);
+                images.add(slot);
+                batchLabels.add(labels.get(id));
+                int e = epoch;
+                int g = generation;
+                tasks[i] = CompletableFuture.runAsync(() -> loadInto(id, e, g, slot), decodePool);
+            }
+            pending.addLast(new PendingBatch(new Batch(input, images, batchLabels), CompletableFuture.allOf(tasks)));
+            scheduledIndex += n;
+        }
+    }
 
-        float[][][] data = new float[channels][imageHeight][imageWidth];
+    private void restartPipeline(int batchSize) {
+        cancelPipeline();
+        freeTensors.clear();
+        delivered = null;
+        pipelineBatchSize = batchSize;
+    }
+
+    /**
+     * 丢弃尚未取走的预取结果，下一次 nextBatch 从 currentIndex 重新调度。
+     * 已排队的单张解码任务不会被 allOf 的 cancel 取消，靠 generation 在开始时识别并跳过
+     */
+    private void cancelPipeline() {
+        generation++;
+        for (PendingBatch p : pending) {
+            p.done.cancel(false);
+        }
+        pending.clear();
+        scheduledIndex = currentIndex;
+    }
 
-        for (int y = 0; y < imageHeight; y++) {
-            for (int x = 0; x < imageWidth; x++) {
-                int rgb = resized.getRGB(x, y);
-                int r = (rgb >> 16) & 0xFF;
-                int gVal = (rgb >> 8) & 0xFF;
-                int b = rgb & 0xFF;
+    private void loadInto(int id, int epoch, int generation, Tensor slot) {
+        if (generation != this.generation) return;  // 所属 batch 已被丢弃
+        ByteImage image = scratch.get();
+        ShardCache shards = shardCache;
+        ImageCache cache = imageCache;
+        Augmentation aug = augmentation;
+        SplittableRandom random = aug == null ? null : aug.random(epoch, id);
+        boolean crop = aug != null && aug.crops();
 
-                data[0][y][x] = r / 255.0f;
-                if (channels > 1) {
-                    data[1][y][x] = gVal / 255.0f;
-                    data[2][y][x] = b / 255.0f;
+        if (shards != null) {
+            shards.read(id, image);
+        } else if (cache == null || !cache.get(id, image)) {
+            try {
+                if (crop && cache == null) {
+                    // 没有缓存要填时，在解码前裁剪，只解码用到的区域
+                    ByteImage.decode(imageFiles.get(id), image, resizeQuality, (w, h) -> aug.cropRegion(random, w, h));
+                    crop = false;
+                } else {
+                    ByteImage.decode(imageFiles.get(id), image, resizeQuality);
                 }
+            } catch (IOException e) {
+                throw new CompletionException(e);
             }
+            if (cache != null) cache.put(id, image);
+        }
+        if (crop) {
+            // 缓存里是整张图缩放后的结果，在 uint8 上裁剪后再缩放回目标尺寸
+            ByteImage target = cropped.get();
+            ImageResizer.resize(image, aug.cropRegion(random, imageWidth, imageHeight), target, resizeQuality);
+            image = target;
+        }
+        if (aug != null) {
+            aug.apply(random, image);
         }
+        image.toFloat(slot.getBuffer(), slot.getOffset());
+    }
+
+    /**
+     * 停止解码线程，丢弃所有预取结果
+     */
+    @Override
+    public void close() {
+        cancelPipeline();
+        decodePool.shutdownNow();
+    }
 
-        return new Tensor(data);
+    /**
+     * 与训练时相同的预处理：缩放到 imageWidth×imageHeight 并归一化到 [0,1]，输出 [1][channels][H][W]。
+     * 推理服务用它保证输入分布与训练一致。
+     */
+    public static Tensor toTensor(BufferedImage img, int imageWidth, int imageHeight, int channels) {
+        float[] data = new float[channels * imageHeight * imageWidth];
+        writeTensor(img, imageWidth, imageHeight, channels, data, 0);
+        return Tensor.wrap(data, 1, channels, imageHeight, imageWidth);
+    }
+
+    /**
+     * 同 {@link #toTensor}，结果按 CHW 写入 dst[offset ...]
+     */
+    public static void writeTensor(BufferedImage img, int imageWidth, int imageHeight, int channels,
+                                   float[] dst, int offset) {
+        ByteImage image = new ByteImage(channels, imageHeight, imageWidth);
+        ByteImage.fromImage(img, image);
+        image.toFloat(dst, offset);
+    }
+
+    private static class PendingBatch {
+        final Batch batch;
+        final CompletableFuture<Void> done;
+
+        PendingBatch(Batch batch, CompletableFuture<Void> done) {
+            this.batch = batch;
+            this.done = done;
+        }
     }
 
     public static class Batch {
-        public final List<Tensor> images;
+        public final Tensor input;          // 整个 batch [N][C][H][W]
+        public final List<Tensor> images;   // 各样本在 input 上的视图
         public final List<Integer> labels;
 
-        public Batch(List<Tensor> images, List<Integer> labels) {
+        public Batch(Tensor input, List<Tensor> images, List<Integer> labels) {
+            this.input = input;
             this.images = images;
             this.labels = labels;
         }
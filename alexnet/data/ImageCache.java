@@ -0,0 +1,121 @@
+package alexnet.data;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 按样本编号缓存解码、缩放后的 uint8 图像，总字节数不超过预算，满了用 CLOCK 算法淘汰。
+ * 所有样本大小相同，所以预算直接换算成固定数量的槽位；CLOCK 每次访问只置一个标记位，
+ * 比 LRU 少了链表维护，在解码线程并发读的场景下锁内开销很小。
+ * <p>
+ * 缓存以样本编号为键，与 {@link DataLoader#shuffleData()} 打乱的访问顺序无关：
+ * 预算能装下整个数据集时，从第二个 epoch 起全部命中；装不下时命中率约为预算占数据集的比例。
+ */
+public class ImageCache {
+    private final int sampleBytes;
+    private final int[] slotOf;         // 样本编号 -> 槽位，-1 表示未缓存
+    private final int[] slotId;         // 槽位 -> 样本编号，-1 表示空槽
+    private final byte[][] slotData;
+    private final boolean[] referenced;
+    private int hand;
+    private int used;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param budgetBytes 最多占用的像素字节数
+     * @param sampleCount 样本总数，编号范围为 [0, sampleCount)
+     */
+    public ImageCache(long budgetBytes, int sampleCount, int channels, int height, int width) {
+        this.sampleBytes = channels * height * width;
+        if (budgetBytes < sampleBytes) {
+            throw new IllegalArgumentException("缓存预算不足一张图像: " + budgetBytes + " < " + sampleBytes);
+        }
+        int slots = (int) Math.min(sampleCount, budgetBytes / sampleBytes);
+        this.slotOf = new int[sampleCount];
+        this.slotId = new int[slots];
+        this.slotData = new byte[slots][];
+        this.referenced = new boolean[slots];
+        Arrays.fill(slotOf, -1);
+        Arrays.fill(slotId, -1);
+    }
+
+    /**
+     * 命中时把样本拷进 dst 并返回 true
+     */
+    public boolean get(int id, ByteImage dst) {
+        byte[] data;
+        synchronized (this) {
+            int slot = slotOf[id];
+            if (slot < 0) {
+                misses++;
+                return false;
+            }
+            hits++;
+            referenced[slot] = true;
+            data = slotData[slot];
+        }
+        // 槽位里的数组放进去后不再修改，被淘汰时只是换成新数组，所以可以在锁外拷贝
+        System.arraycopy(data, 0, dst.getData(), 0, sampleBytes);
+        return true;
+    }
+
+    /**
+     * 放入一份 src 的拷贝；已缓存则忽略
+     */
+    public void put(int id, ByteImage src) {
+        if (src.size() != sampleBytes) {
+            throw new IllegalArgumentException("图像大小不符: " + src.size() + " != " + sampleBytes);
+        }
+        byte[] copy = Arrays.copyOf(src.getData(), sampleBytes);
+        synchronized (this) {
+            if (slotOf[id] >= 0) return;
+            int slot;
+            if (used < slotId.length) {
+                slot = used++;
+            } else {
+                // 指针扫过时清掉标记，第一个未被标记的槽位被淘汰
+                while (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = (hand + 1) % slotId.length;
+                }
+                slot = hand;
+                hand = (hand + 1) % slotId.length;
+                slotOf[slotId[slot]] = -1;
+                evictions++;
+            }
+            slotId[slot] = id;
+            slotData[slot] = copy;
+            referenced[slot] = false;
+            slotOf[id] = slot;
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * 当前缓存的像素字节数
+     */
+    public synchronized long getBytes() {
+        return (long) used * sampleBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return String.format(Locale.ROOT, "hits=%d misses=%d hitRate=%.1f%% evictions=%d cached=%.1fMB",
+                hits, misses, lookups == 0 ? 0 : 100.0 * hits / lookups, evictions, getBytes() / 1048576.0);
+    }
+}
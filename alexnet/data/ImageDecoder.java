@@ -0,0 +1,111 @@
+package alexnet.data;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 按目标尺寸解码：先只读文件头拿到原图尺寸，再用 {@link ImageReadParam#setSourceSubsampling} 隔行隔列取样、
+ * 用 {@link ImageReadParam#setSourceRegion} 只解码需要的区域，解码出的像素数随输出尺寸而不是原图尺寸增长。
+ * <p>
+ * ImageReader 按线程、按文件后缀缓存复用，省掉每张图重新查找与创建解码器的开销；
+ * 只应在固定的工作线程（如 DataLoader 的解码线程池）上调用。
+ */
+public final class ImageDecoder {
+
+    /**
+     * 根据原图尺寸选出要解码的区域（原图坐标），用于在解码前完成随机裁剪；返回 null 表示整张图
+     */
+    public interface Region {
+        Rectangle select(int sourceWidth, int sourceHeight);
+    }
+
+    private static final ThreadLocal<Map<String, ImageReader>> READERS = ThreadLocal.withInitial(HashMap::new);
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * 解码 file 中 region 选出的区域，尽量隔行隔列取样，但保证结果不小于 minWidth×minHeight
+     */
+    public static BufferedImage read(File file, int minWidth, int minHeight, Region region) throws IOException {
+        ImageReader reader = readerFor(file);
+        if (reader == null) {
+            BufferedImage img = ImageIO.read(file);
+            if (img == null) {
+                throw new IOException("无法解码图像: " + file);
+            }
+            return region == null ? img : crop(img, region.select(img.getWidth(), img.getHeight()));
+        }
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            if (stream == null) {
+                throw new IOException("无法打开图像: " + file);
+            }
+            reader.setInput(stream, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            Rectangle area = region == null ? null : clip(region.select(width, height), width, height);
+            int areaWidth = area == null ? width : area.width;
+            int areaHeight = area == null ? height : area.height;
+
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (area != null) {
+                param.setSourceRegion(area);
+            }
+            int stepX = Math.max(1, areaWidth / Math.max(1, minWidth));
+            int stepY = Math.max(1, areaHeight / Math.max(1, minHeight));
+            if (stepX > 1 || stepY > 1) {
+                param.setSourceSubsampling(stepX, stepY, 0, 0);
+            }
+            BufferedImage img = reader.read(0, param);
+            // 只断开输入，解码器留给本线程的下一张图
+            reader.setInput(null);
+            return img;
+        } catch (IOException | RuntimeException e) {
+            // 出错后解码器的内部状态不可靠，丢弃，下次重新创建
+            READERS.get().values().remove(reader);
+            reader.dispose();
+            if (e instanceof IOException) throw (IOException) e;
+            throw new IOException("无法解码图像: " + file, e);
+        }
+    }
+
+    private static ImageReader readerFor(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot < 0) return null;
+        String suffix = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        Map<String, ImageReader> readers = READERS.get();
+        ImageReader reader = readers.get(suffix);
+        if (reader == null) {
+            Iterator<ImageReader> it = ImageIO.getImageReadersBySuffix(suffix);
+            if (!it.hasNext()) return null;
+            reader = it.next();
+            readers.put(suffix, reader);
+        }
+        return reader;
+    }
+
+    private static Rectangle clip(Rectangle r, int width, int height) {
+        if (r == null) return null;
+        Rectangle clipped = r.intersection(new Rectangle(0, 0, width, height));
+        if (clipped.isEmpty()) {
+            throw new IllegalArgumentException("裁剪区域 " + r + " 不在图像 " + width + "x" + height + " 内");
+        }
+        return clipped;
+    }
+
+    private static BufferedImage crop(BufferedImage img, Rectangle r) {
+        Rectangle c = clip(r, img.getWidth(), img.getHeight());
+        return c == null ? img : img.getSubimage(c.x, c.y, c.width, c.height);
+    }
+}
@@ -0,0 +1,358 @@
+package alexnet.data;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.Arrays;
+
+/**
+ * 把任意 BufferedImage 缩放并拆成 CHW 的 uint8 平面，一遍完成。
+ * <p>
+ * 常见的解码结果（JPEG 的 3 字节 BGR、灰度，PNG 的 4 字节 ABGR 与打包 int）直接读 Raster 的 DataBuffer，
+ * 最近邻与双线性只读取用到的行和列，先水平插值再竖直插值，区域平均把源行拆成 R/G/B 平面行后累加，
+ * 都避开了逐像素 getRGB 的颜色模型转换；
+ * 其它格式退化为每行一次的批量 getRGB。带 alpha 的图像只取颜色分量；灰度图直接取存储的灰度值，
+ * 不再经过 getRGB 的线性灰度到 sRGB 的转换。
+ */
+public final class ImageResizer {
+
+    /**
+     * 重采样质量
+     */
+    public enum Quality {
+        /** 最近邻，最快，缩小时有锯齿 */
+        NEAREST,
+        /** 双线性（像素中心对齐），每个输出行只读两行源像素 */
+        BILINEAR,
+        /** 区域平均，缩小时每个源像素都参与，效果接近 SCALE_SMOOTH；放大的方向退化为最近邻 */
+        AREA
+    }
+
+    private ImageResizer() {
+    }
+
+    /**
+     * 把 src 缩放到 dst 的尺寸写入 dst；dst 为单通道时只取 R 通道
+     */
+    public static void resize(BufferedImage src, ByteImage dst, Quality quality) {
+        resize(new RowReader(src), dst, quality);
+    }
+
+    /**
+     * 把 src 中 region 区域缩放到 dst 的尺寸写入 dst，用于在 uint8 图像上做裁剪与尺度抖动
+     */
+    public static void resize(ByteImage src, Rectangle region, ByteImage dst, Quality quality) {
+        if (region.x < 0 || region.y < 0 || region.width < 1 || region.height < 1
+                || region.x + region.width > src.getWidth() || region.y + region.height > src.getHeight()) {
+            throw new IllegalArgumentException("裁剪区域 " + region + " 超出图像 "
+                    + src.getWidth() + "x" + src.getHeight());
+        }
+        resize(new RowReader(src, region), dst, quality);
+    }
+
+    private static void resize(RowReader reader, ByteImage dst, Quality quality) {
+        switch (quality) {
+            case NEAREST:
+                nearest(reader, dst);
+                break;
+            case BILINEAR:
+                bilinear(reader, dst);
+                break;
+            case AREA:
+                area(reader, dst);
+                break;
+            default:
+                throw new IllegalArgumentException("未知的重采样质量: " + quality);
+        }
+    }
+
+    private static void nearest(RowReader src, ByteImage dst) {
+        int w = dst.getWidth();
+        int h = dst.getHeight();
+        int[] xs = new int[w];
+        for (int x = 0; x < w; x++) {
+            xs[x] = Math.min(src.width - 1, (int) ((x + 0.5) * src.width / w));
+        }
+        // 权重全为 0 的水平插值就是按列取样
+        int[] zero = new int[w];
+        int[][] row = new int[3][w];
+        byte[] out = dst.getData();
+        int bands = dst.getChannels() > 1 ? 3 : 1;
+        int plane = h * w;
+        for (int y = 0; y < h; y++) {
+            src.resampleRow(Math.min(src.height - 1, (int) ((y + 0.5) * src.height / h)), xs, xs, zero, row, bands);
+            for (int c = 0; c < bands; c++) {
+                int[] r = row[c];
+                int base = c * plane + y * w;
+                for (int x = 0; x < w; x++) {
+                    out[base + x] = (byte) (r[x] >> 8);
+                }
+            }
+        }
+    }
+
+    private static void bilinear(RowReader src, ByteImage dst) {
+        int w = dst.getWidth();
+        int h = dst.getHeight();
+        // 8 位定点权重：水平插值结果放大 256 倍，竖直插值后再放大 256 倍，最后四舍五入右移 16 位
+        int[] x0 = new int[w];
+        int[] x1 = new int[w];
+        int[] wx = new int[w];
+        for (int x = 0; x < w; x++) {
+            float sx = Math.max(0f, (x + 0.5f) * src.width / w - 0.5f);
+            x0[x] = Math.min(src.width - 1, (int) sx);
+            x1[x] = Math.min(src.width - 1, x0[x] + 1);
+            wx[x] = Math.round((sx - (int) sx) * 256);
+        }
+
+        // 先水平插值再竖直插值：每个源行只水平插值一次，结果放在两个槽位里供相邻输出行共用
+        int[][][] resampled = new int[2][3][w];
+        int[] loaded = {-1, -1};
+        byte[] out = dst.getData();
+        int bands = dst.getChannels() > 1 ? 3 : 1;
+        int plane = h * w;
+        for (int y = 0; y < h; y++) {
+            float sy = Math.max(0f, (y + 0.5f) * src.height / h - 0.5f);
+            int y0 = Math.min(src.height - 1, (int) sy);
+            int y1 = Math.min(src.height - 1, y0 + 1);
+            int wy = Math.round((sy - (int) sy) * 256);
+            int[][] top = rowSlot(src, resampled, loaded, y0, -1, bands, x0, x1, wx);
+            int[][] bottom = rowSlot(src, resampled, loaded, y1, y0, bands, x0, x1, wx);
+
+            for (int c = 0; c < bands; c++) {
+                int[] t = top[c];
+                int[] b = bottom[c];
+                int base = c * plane + y * w;
+                for (int x = 0; x < w; x++) {
+                    int v = (t[x] << 8) + (b[x] - t[x]) * wy;
+                    out[base + x] = (byte) ((v + (1 << 15)) >> 16);
+                }
+            }
+        }
+    }
+
+    /**
+     * 返回源行 y 水平插值后的结果所在槽位，必要时计算；pinned 为同一输出行已占用的源行，不能被覆盖
+     */
+    private static int[][] rowSlot(RowReader src, int[][][] resampled, int[] loaded, int y, int pinned,
+                                   int bands, int[] x0, int[] x1, int[] wx) {
+        for (int s = 0; s < 2; s++) {
+            if (loaded[s] == y) return resampled[s];
+        }
+        int s = loaded[0] == pinned ? 1 : 0;
+        src.resampleRow(y, x0, x1, wx, resampled[s], bands);
+        loaded[s] = y;
+        return resampled[s];
+    }
+
+    private static void area(RowReader src, ByteImage dst) {
+        int w = dst.getWidth();
+        int h = dst.getHeight();
+        int[] xs = new int[w + 1];
+        for (int x = 0; x <= w; x++) {
+            xs[x] = (int) ((long) x * src.width / w);
+        }
+        int[][] row = new int[3][src.width];
+        int[][] acc = new int[3][w];
+        byte[] out = dst.getData();
+        int bands = dst.getChannels() > 1 ? 3 : 1;
+        int plane = h * w;
+        for (int y = 0; y < h; y++) {
+            int ys = (int) ((long) y * src.height / h);
+            int ye = Math.max(ys + 1, (int) ((long) (y + 1) * src.height / h));
+            for (int c = 0; c < bands; c++) {
+                Arrays.fill(acc[c], 0);
+            }
+            for (int sy = ys; sy < ye; sy++) {
+                src.read(sy, row);
+                for (int c = 0; c < bands; c++) {
+                    int[] r = row[c];
+                    int[] a = acc[c];
+                    for (int x = 0; x < w; x++) {
+                        int end = Math.max(xs[x] + 1, xs[x + 1]);
+                        int sum = 0;
+                        for (int sx = xs[x]; sx < end; sx++) {
+                            sum += r[sx];
+                        }
+                        a[x] += sum;
+                    }
+                }
+            }
+            for (int c = 0; c < bands; c++) {
+                int[] a = acc[c];
+                int base = c * plane + y * w;
+                for (int x = 0; x < w; x++) {
+                    int count = Math.max(1, xs[x + 1] - xs[x]) * (ye - ys);
+                    out[base + x] = (byte) ((a[x] + count / 2) / count);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按行把源图像拆成 R/G/B 三个平面行，根据 Raster 布局选择直接读取或批量 getRGB
+     */
+    private static final class RowReader {
+        final int width;
+        final int height;
+        private final BufferedImage image;
+
+        // 按分量交错存放的字节数据：灰度、BGR、ABGR 等，以及 CHW 平铺的 ByteImage（像素步长 1，分量偏移为整个平面）
+        private byte[] bytes;
+        private int pixelStride;
+        private int scanlineStride;
+        private int base;
+        private int rOffset, gOffset, bOffset;
+
+        // 打包在一个 int 里的像素：INT_RGB、INT_ARGB、INT_BGR
+        private int[] ints;
+        private int rMask, gMask, bMask;
+        private int rShift, gShift, bShift;
+
+        private int[] argb;     // 通用路径的行缓冲
+        private int[][] rows;
+
+        /**
+         * 读取 CHW 平铺的 uint8 图像中的一块区域
+         */
+        RowReader(ByteImage source, Rectangle region) {
+            this.image = null;
+            this.width = region.width;
+            this.height = region.height;
+            int plane = source.getHeight() * source.getWidth();
+            bytes = source.getData();
+            pixelStride = 1;
+            scanlineStride = source.getWidth();
+            base = region.y * scanlineStride + region.x;
+            rOffset = 0;
+            gOffset = source.getChannels() > 1 ? plane : 0;
+            bOffset = source.getChannels() > 1 ? 2 * plane : 0;
+        }
+
+        RowReader(BufferedImage image) {
+            this.image = image;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            Raster raster = image.getRaster();
+            ColorModel cm = image.getColorModel();
+            DataBuffer buffer = raster.getDataBuffer();
+            int originX = -raster.getSampleModelTranslateX();
+            int originY = -raster.getSampleModelTranslateY();
+
+            if (buffer instanceof DataBufferByte && buffer.getNumBanks() == 1
+                    && raster.getSampleModel() instanceof ComponentSampleModel
+                    && cm instanceof ComponentColorModel && !cm.isAlphaPremultiplied()
+                    && (cm.getColorSpace().isCS_sRGB() || cm.getColorSpace().getType() == ColorSpace.TYPE_GRAY)
+                    && cm.getComponentSize(0) == 8) {
+                ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+                int[] offsets = sm.getBandOffsets();
+                boolean gray = cm.getNumColorComponents() == 1;
+                bytes = ((DataBufferByte) buffer).getData();
+                pixelStride = sm.getPixelStride();
+                scanlineStride = sm.getScanlineStride();
+                base = buffer.getOffset() + originY * scanlineStride + originX * pixelStride;
+                rOffset = offsets[0];
+                gOffset = gray ? offsets[0] : offsets[1];
+                bOffset = gray ? offsets[0] : offsets[2];
+            } else if (buffer instanceof DataBufferInt && buffer.getNumBanks() == 1
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+                    && cm instanceof DirectColorModel && !cm.isAlphaPremultiplied()
+                    && cm.getComponentSize(0) == 8 && cm.getComponentSize(1) == 8 && cm.getComponentSize(2) == 8) {
+                SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+                DirectColorModel dcm = (DirectColorModel) cm;
+                ints = ((DataBufferInt) buffer).getData();
+                scanlineStride = sm.getScanlineStride();
+                base = buffer.getOffset() + originY * scanlineStride + originX;
+                rMask = dcm.getRedMask();
+                gMask = dcm.getGreenMask();
+                bMask = dcm.getBlueMask();
+                rShift = Integer.numberOfTrailingZeros(rMask);
+                gShift = Integer.numberOfTrailingZeros(gMask);
+                bShift = Integer.numberOfTrailingZeros(bMask);
+            } else {
+                argb = new int[width];
+            }
+        }
+
+        /**
+         * 源行 y 的水平插值：out[c][x] = 256 * p[x0] + (p[x1] - p[x0]) * wx，只读取用到的列
+         */
+        void resampleRow(int y, int[] x0, int[] x1, int[] wx, int[][] out, int bands) {
+            int w = x0.length;
+            if (bytes != null) {
+                int p = base + y * scanlineStride;
+                for (int c = 0; c < bands; c++) {
+                    int offset = p + (c == 0 ? rOffset : c == 1 ? gOffset : bOffset);
+                    int[] o = out[c];
+                    for (int x = 0; x < w; x++) {
+                        int left = bytes[offset + x0[x] * pixelStride] & 0xFF;
+                        int right = bytes[offset + x1[x] * pixelStride] & 0xFF;
+                        o[x] = (left << 8) + (right - left) * wx[x];
+                    }
+                }
+            } else if (ints != null) {
+                int p = base + y * scanlineStride;
+                for (int c = 0; c < bands; c++) {
+                    int mask = c == 0 ? rMask : c == 1 ? gMask : bMask;
+                    int shift = c == 0 ? rShift : c == 1 ? gShift : bShift;
+                    int[] o = out[c];
+                    for (int x = 0; x < w; x++) {
+                        int left = (ints[p + x0[x]] & mask) >>> shift;
+                        int right = (ints[p + x1[x]] & mask) >>> shift;
+                        o[x] = (left << 8) + (right - left) * wx[x];
+                    }
+                }
+            } else {
+                if (rows == null) rows = new int[3][width];
+                read(y, rows);
+                for (int c = 0; c < bands; c++) {
+                    int[] r = rows[c];
+                    int[] o = out[c];
+                    for (int x = 0; x < w; x++) {
+                        int left = r[x0[x]];
+                        o[x] = (left << 8) + (r[x1[x]] - left) * wx[x];
+                    }
+                }
+            }
+        }
+
+        void read(int y, int[][] rgb) {
+            int[] r = rgb[0];
+            int[] g = rgb[1];
+            int[] b = rgb[2];
+            if (bytes != null) {
+                int p = base + y * scanlineStride;
+                for (int x = 0; x < width; x++, p += pixelStride) {
+                    r[x] = bytes[p + rOffset] & 0xFF;
+                    g[x] = bytes[p + gOffset] & 0xFF;
+                    b[x] = bytes[p + bOffset] & 0xFF;
+                }
+            } else if (ints != null) {
+                int p = base + y * scanlineStride;
+                for (int x = 0; x < width; x++) {
+                    int v = ints[p + x];
+                    r[x] = (v & rMask) >>> rShift;
+                    g[x] = (v & gMask) >>> gShift;
+                    b[x] = (v & bMask) >>> bShift;
+                }
+            } else {
+                image.getRGB(0, y, width, 1, argb, 0, width);
+                for (int x = 0; x < width; x++) {
+                    int v = argb[x];
+                    r[x] = (v >> 16) & 0xFF;
+                    g[x] = (v >> 8) & 0xFF;
+                    b[x] = v & 0xFF;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package alexnet.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 预处理好的 uint8 分片缓存。每个样本缩放到目标尺寸后按 CHW 存 C*H*W 个字节，
+ * 按数据集文件顺序依次写进若干个约 64MB 的分片文件 shard-NNNNN.bin，之后的 epoch 通过内存映射直接读取，不再解码。
+ * <p>
+ * manifest.bin 记录尺寸、每片样本数、各分片的指纹与全部标签（小端序）：
+ * <pre>
+ * int magic = 'ANSH', int version, int width, int height, int channels,
+ * int sampleCount, int samplesPerShard, int shardCount,
+ * long fingerprint[shardCount], int label[sampleCount]
+ * </pre>
+ * 分片指纹由其中每个文件的路径、大小、修改时间、标签以及目标尺寸、缩放算法算出。打开时只重建指纹不符或缺失的分片，
+ * 全部写完后才替换 manifest，因此中途失败不会留下被当作有效的分片。
+ */
+public class ShardCache {
+    private static final int MAGIC = 0x414E5348;    // "ANSH"
+    private static final int VERSION = 2;     // 2：解码阶段按目标尺寸隔行隔列取样，像素与版本 1 不同
+    private static final long TARGET_SHARD_BYTES = 64L << 20;
+    private static final String MANIFEST = "manifest.bin";
+
+    private final int sampleBytes;
+    private final int samplesPerShard;
+    private final int sampleCount;
+    private final MappedByteBuffer[] shards;
+    private final int rebuiltShards;
+
+    private ShardCache(int sampleBytes, int samplesPerShard, int sampleCount, MappedByteBuffer[] shards, int rebuiltShards) {
+        this.sampleBytes = sampleBytes;
+        this.samplesPerShard = samplesPerShard;
+        this.sampleCount = sampleCount;
+        this.shards = shards;
+        this.rebuiltShards = rebuiltShards;
+    }
+
+    /**
+     * 打开 directory 中的分片缓存，与当前数据集不一致的分片先在 pool 上并行解码重建
+     *
+     * @param files  数据集文件，顺序即样本编号
+     * @param labels 与 files 一一对应的标签
+     */
+    public static ShardCache open(Path directory, List<File> files, List<Integer> labels,
+                                  int width, int height, int channels, ImageResizer.Quality quality,
+                                  ExecutorService pool) throws IOException {
+        Files.createDirectories(directory);
+        int sampleBytes = channels * height * width;
+        int perShard = (int) Math.max(1, TARGET_SHARD_BYTES / sampleBytes);
+        int count = files.size();
+        int shardCount = (count + perShard - 1) / perShard;
+
+        long[] fingerprints = new long[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            long h = 1125899906842597L;
+            h = mix(h, width);
+            h = mix(h, height);
+            h = mix(h, channels);
+            h = mix(h, quality.ordinal());
+            for (int i = s * perShard; i < Math.min(count, (s + 1) * perShard); i++) {
+                File f = files.get(i);
+                h = mix(h, f.getAbsolutePath().hashCode());
+                h = mix(h, f.length());
+                h = mix(h, f.lastModified());
+                h = mix(h, labels.get(i));
+            }
+            fingerprints[s] = h;
+        }
+
+        long[] old = readFingerprints(directory.resolve(MANIFEST), width, height, channels, perShard);
+        int rebuilt = 0;
+        for (int s = 0; s < shardCount; s++) {
+            int first = s * perShard;
+            int n = Math.min(count, first + perShard) - first;
+            Path shard = shardPath(directory, s);
+            boolean valid = old != null && s < old.length && old[s] == fingerprints[s]
+                    && Files.exists(shard) && Files.size(shard) == (long) n * sampleBytes;
+            if (!valid) {
+                buildShard(shard, files.subList(first, first + n), width, height, channels, quality, pool);
+                rebuilt++;
+            }
+        }
+        if (rebuilt > 0 || old == null || old.length != shardCount) {
+            writeManifest(directory, width, height, channels, count, perShard, fingerprints, labels);
+        }
+        for (int s = shardCount; Files.deleteIfExists(shardPath(directory, s)); s++) {
+            // 数据集变小后多出来的旧分片
+        }
+
+        MappedByteBuffer[] mapped = new MappedByteBuffer[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            try (FileChannel channel = FileChannel.open(shardPath(directory, s), StandardOpenOption.READ)) {
+                mapped[s] = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        return new ShardCache(sampleBytes, perShard, count, mapped, rebuilt);
+    }
+
+    /**
+     * 把第 id 个样本拷进 dst；可被多个线程同时调用
+     */
+    public void read(int id, ByteImage dst) {
+        if (id < 0 || id >= sampleCount) {
+            throw new IllegalArgumentException("样本编号越界: " + id + " / " + sampleCount);
+        }
+        if (dst.size() != sampleBytes) {
+            throw new IllegalArgumentException("目标图像大小不符: " + dst.size() + " != " + sampleBytes);
+        }
+        // 绝对位置的批量读取不改动缓冲区的 position，多线程共享同一个映射是安全的
+        shards[id / samplesPerShard].get((id % samplesPerShard) * sampleBytes, dst.getData(), 0, sampleBytes);
+    }
+
+    public int size() {
+        return sampleCount;
+    }
+
+    /**
+     * 本次打开时重建的分片数
+     */
+    public int getRebuiltShards() {
+        return rebuiltShards;
+    }
+
+    private static void buildShard(Path shard, List<File> files, int width, int height, int channels,
+                                   ImageResizer.Quality quality, ExecutorService pool) throws IOException {
+        int sampleBytes = channels * height * width;
+        byte[] data = new byte[files.size() * sampleBytes];
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            int offset = i * sampleBytes;
+            tasks.add(CompletableFuture.runAsync(() -> {
+                byte[] pixels = new byte[sampleBytes];
+                try {
+                    ByteImage.decode(file, new ByteImage(channels, height, width, pixels), quality);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                System.arraycopy(pixels, 0, data, offset, sampleBytes);
+            }, pool));
+        }
+        try {
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("构建分片时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+
+        Path tmp = shard.resolveSibling(shard.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(tmp, shard, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeManifest(Path directory, int width, int height, int channels, int count, int perShard,
+                                      long[] fingerprints, List<Integer> labels) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(32 + 8 * fingerprints.length + 4 * count).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(channels)
+                .putInt(count).putInt(perShard).putInt(fingerprints.length);
+        for (long f : fingerprints) buffer.putLong(f);
+        for (int label : labels) buffer.putInt(label);
+        Path tmp = directory.resolve(MANIFEST + ".tmp");
+        Files.write(tmp, buffer.array());
+        Files.move(tmp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取旧 manifest 中的分片指纹；文件不存在、损坏或尺寸参数不同则返回 null（全部重建）
+     */
+    private static long[] readFingerprints(Path manifest, int width, int height, int channels, int perShard) {
+        try {
+            if (!Files.exists(manifest)) return null;
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(manifest)).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != width
+                    || buffer.getInt() != height || buffer.getInt() != channels) {
+                return null;
+            }
+            buffer.getInt();    // sampleCount
+            if (buffer.getInt() != perShard) return null;
+            long[] fingerprints = new long[buffer.getInt()];
+            for (int s = 0; s < fingerprints.length; s++) {
+                fingerprints[s] = buffer.getLong();
+            }
+            return fingerprints;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Path shardPath(Path directory, int shard) {
+        return directory.resolve(String.format("shard-%05d.bin", shard));
+    }
+
+    private static long mix(long h, long value) {
+        h ^= value;
+        h *= 0x100000001B3L;
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,187 @@
+package alexnet.distributed;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * 比较各梯度压缩方式的压缩比与收敛情况。小任务是合成数据上的 softmax 回归：
+ * K 个模拟 worker 各自在本地样本上算梯度，经 {@link CompressedSync} 编码、解码求平均后做同一次 SGD 更新，
+ * 与进程间同步的数据流完全一致，只是省去了网络。最后再在 fc6 大小的数组上测一次编码耗时。
+ * <p>
+ * 用法：java alexnet.distributed.CompressionBenchmark [steps]
+ */
+public class CompressionBenchmark {
+    private static final int FEATURES = 512;
+    private static final int CLASSES = 50;
+    private static final int WORKERS = 4;
+    private static final int BATCH = 16;                 // 每个 worker 每步的样本数
+    private static final int TRAIN = 8000;
+    private static final int TEST = 2000;
+    private static final float LEARNING_RATE = 0.05f;
+    private static final int FC6_LENGTH = 9216 * 4096;
+
+    public static void main(String[] args) {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        Dataset data = new Dataset(42);
+        String[] specs = {"none", "int8", "sign", "topk:0.01", "topk:0.001"};
+
+        System.out.printf("softmax regression, %d features x %d classes, %d workers x batch %d, %d steps%n",
+                FEATURES, CLASSES, WORKERS, BATCH, steps);
+        System.out.printf("%-12s %14s %8s %10s %10s %10s %12s%n",
+                "method", "bytes/step", "ratio", "loss@1/4", "loss", "test acc", "fc6 encode");
+        for (String spec : specs) {
+            run(spec, data, steps);
+        }
+    }
+
+    private static void run(String spec, Dataset data, int steps) {
+        boolean raw = spec.equals("none");
+        CompressedSync[] syncs = new CompressedSync[WORKERS];
+        for (int w = 0; w < WORKERS; w++) {
+            syncs[w] = new CompressedSync(null, raw ? null : GradientCompressor.parse(spec), raw ? Integer.MAX_VALUE : 1024);
+        }
+        float[] weights = new float[CLASSES * FEATURES];
+        float[] bias = new float[CLASSES];
+        float[][][] grads = new float[WORKERS][][];
+        for (int w = 0; w < WORKERS; w++) {
+            grads[w] = new float[][]{new float[weights.length], new float[bias.length]};
+        }
+
+        SplittableRandom random = new SplittableRandom(7);
+        float earlyLoss = 0;
+        for (int step = 1; step <= steps; step++) {
+            ByteBuffer[] messages = new ByteBuffer[WORKERS];
+            for (int w = 0; w < WORKERS; w++) {
+                // 每个 worker 从自己的分片里取样本
+                int[] batch = new int[BATCH];
+                for (int b = 0; b < BATCH; b++) {
+                    batch[b] = w + WORKERS * random.nextInt(TRAIN / WORKERS);
+                }
+                data.gradient(weights, bias, batch, grads[w][0], grads[w][1]);
+                ByteBuffer m = syncs[w].encode(grads[w]);
+                messages[w] = ByteBuffer.allocate(m.remaining()).put(m).flip();
+            }
+            // 每个 worker 都会得到相同的平均梯度，这里解码一份即可
+            syncs[0].decodeAverage(messages, grads[0]);
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] -= LEARNING_RATE * grads[0][0][i];
+            }
+            for (int i = 0; i < bias.length; i++) {
+                bias[i] -= LEARNING_RATE * grads[0][1][i];
+            }
+            if (step == steps / 4) {
+                earlyLoss = data.loss(weights, bias, 0, TRAIN)[0];
+            }
+        }
+
+        float[] train = data.loss(weights, bias, 0, TRAIN);
+        float[] test = data.loss(weights, bias, TRAIN, TRAIN + TEST);
+        CompressedSync s = syncs[0];
+        System.out.printf("%-12s %14d %7.1fx %10.4f %10.4f %9.2f%% %9.1f ms%n",
+                spec, s.getCompressedBytes() / s.getSteps(), s.getCompressionRatio(),
+                earlyLoss, train[0], test[1] * 100, raw ? 0.0 : encodeMillis(spec));
+    }
+
+    // 在 fc6 大小（约 3800 万个元素）的随机梯度上编码一次的耗时，先预热一次
+    private static double encodeMillis(String spec) {
+        float[] gradient = new float[FC6_LENGTH];
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < gradient.length; i++) {
+            gradient[i] = (float) (random.nextDouble() - 0.5) * 1e-3f;
+        }
+        GradientCompressor compressor = GradientCompressor.parse(spec);
+        ByteBuffer out = ByteBuffer.allocate(compressor.maxBytes(gradient.length));
+        compressor.compress(0, gradient, out);
+        out.clear();
+        long t0 = System.nanoTime();
+        compressor.compress(0, gradient, out);
+        return (System.nanoTime() - t0) / 1e6;
+    }
+
+    /**
+     * 高斯混合的合成数据：每类一个随机中心，样本为中心加上单位噪声
+     */
+    private static final class Dataset {
+        final float[][] x = new float[TRAIN + TEST][FEATURES];
+        final int[] y = new int[TRAIN + TEST];
+        final float[] logits = new float[CLASSES];
+
+        Dataset(long seed) {
+            SplittableRandom random = new SplittableRandom(seed);
+            float[][] centers = new float[CLASSES][FEATURES];
+            for (float[] c : centers) {
+                for (int f = 0; f < FEATURES; f++) {
+                    c[f] = (float) gaussian(random) * 0.15f;
+                }
+            }
+            for (int n = 0; n < x.length; n++) {
+                y[n] = random.nextInt(CLASSES);
+                for (int f = 0; f < FEATURES; f++) {
+                    x[n][f] = centers[y[n]][f] + (float) gaussian(random);
+                }
+            }
+        }
+
+        // 批内平均的交叉熵梯度
+        void gradient(float[] weights, float[] bias, int[] batch, float[] gw, float[] gb) {
+            java.util.Arrays.fill(gw, 0);
+            java.util.Arrays.fill(gb, 0);
+            float inv = 1.0f / batch.length;
+            for (int n : batch) {
+                softmax(weights, bias, x[n]);
+                for (int c = 0; c < CLASSES; c++) {
+                    float d = (logits[c] - (c == y[n] ? 1 : 0)) * inv;
+                    gb[c] += d;
+                    int row = c * FEATURES;
+                    for (int f = 0; f < FEATURES; f++) {
+                        gw[row + f] += d * x[n][f];
+                    }
+                }
+            }
+        }
+
+        // 返回 {平均损失, 准确率}
+        float[] loss(float[] weights, float[] bias, int from, int to) {
+            double loss = 0;
+            int correct = 0;
+            for (int n = from; n < to; n++) {
+                softmax(weights, bias, x[n]);
+                loss -= Math.log(Math.max(logits[y[n]], 1e-12f));
+                int best = 0;
+                for (int c = 1; c < CLASSES; c++) {
+                    if (logits[c] > logits[best]) best = c;
+                }
+                if (best == y[n]) correct++;
+            }
+            return new float[]{(float) (loss / (to - from)), (float) correct / (to - from)};
+        }
+
+        private void softmax(float[] weights, float[] bias, float[] sample) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int c = 0; c < CLASSES; c++) {
+                float z = bias[c];
+                int row = c * FEATURES;
+                for (int f = 0; f < FEATURES; f++) {
+                    z += weights[row + f] * sample[f];
+                }
+                logits[c] = z;
+                max = Math.max(max, z);
+            }
+            float sum = 0;
+            for (int c = 0; c < CLASSES; c++) {
+                logits[c] = (float) Math.exp(logits[c] - max);
+                sum += logits[c];
+            }
+            for (int c = 0; c < CLASSES; c++) {
+                logits[c] /= sum;
+            }
+        }
+
+        private static double gaussian(SplittableRandom random) {
+            double u = 1 - random.nextDouble();
+            return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package alexnet.distributed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式训练的本地协调进程，只负责会合与监控，不经手梯度。基于行的文本协议：
+ * <pre>
+ * worker -> HELLO rank host port     注册数据端口
+ * coord  -> PEERS h:p h:p ...         全部注册后下发，按 rank 排列
+ * worker -> STEP step computeMillis   每步本地计算结束、all-reduce 之前汇报计算耗时（不含通信）
+ * worker -> DONE                      正常结束
+ * coord  -> ABORT reason              有 worker 异常断开时通知其余 worker 退出
+ * </pre>
+ * 每一步全部汇报后，耗时超过中位数 stragglerFactor 倍的 rank 记为掉队；
+ * 某一步有 rank 汇报后超过 stepTimeout 仍有 rank 未汇报，打印等待中的 rank：
+ * 汇报先于 all-reduce，先算完的 rank 已在交换处等待，未汇报的就是还卡在计算里的 rank。
+ */
+public class Coordinator implements AutoCloseable {
+    private static final double STRAGGLER_FACTOR = 1.5;
+    private static final long STRAGGLER_MIN_GAP_MILLIS = 50;
+
+    private final ServerSocket server;
+    private final int world;
+    private final long stepTimeoutMillis;
+
+    private final String[] addresses;
+    private final PrintWriter[] writers;
+    private final boolean[] done;
+    private final int[] straggles;
+    private int registered;
+    private int finished;
+    private boolean aborted;
+    private final Map<Long, StepRecord> steps = new TreeMap<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    private static class StepRecord {
+        final long[] millis;
+        final long firstReport = System.currentTimeMillis();
+        int reported;
+        boolean warned;
+
+        StepRecord(int world) {
+            millis = new long[world];
+            Arrays.fill(millis, -1);
+        }
+    }
+
+    /**
+     * @param port              监听端口，0 表示任选
+     * @param stepTimeoutMillis 一步开始后多久仍有 rank 未汇报就打印警告
+     */
+    public Coordinator(int port, int world, long stepTimeoutMillis) throws IOException {
+        if (world < 1) {
+            throw new IllegalArgumentException("worker 数必须为正: " + world);
+        }
+        this.server = new ServerSocket(port, world, InetAddress.getByName(
+                System.getProperty("alexnet.dist.bind", "0.0.0.0")));
+        this.world = world;
+        this.stepTimeoutMillis = stepTimeoutMillis;
+        this.addresses = new String[world];
+        this.writers = new PrintWriter[world];
+        this.done = new boolean[world];
+        this.straggles = new int[world];
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "coordinator-accept");
+        Thread watchdog = new Thread(this::watchdog, "coordinator-watchdog");
+        for (Thread t : new Thread[]{acceptor, watchdog}) {
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    /**
+     * 等待全部 worker 发出 DONE 或有 worker 异常退出
+     *
+     * @return 全部正常结束时为 true
+     */
+    public synchronized boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while (finished < world && !aborted) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) break;
+            wait(remaining);
+        }
+        return finished == world;
+    }
+
+    private void acceptLoop() {
+        try {
+            for (int i = 0; i < world; i++) {
+                Socket socket = server.accept();
+                Thread t = new Thread(() -> serve(socket), "coordinator-conn-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
+        } catch (IOException e) {
+            if (!server.isClosed()) {
+                log("accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        int rank = -1;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.trim().split("\\s+");
+                switch (parts[0]) {
+                    case "HELLO":
+                        rank = Integer.parseInt(parts[1]);
+                        register(rank, parts[2] + ":" + parts[3], out);
+                        break;
+                    case "STEP":
+                        report(rank, Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                        break;
+                    case "DONE":
+                        finish(rank);
+                        return;
+                    default:
+                        log("rank " + rank + " sent unknown message: " + line);
+                }
+            }
+            lost(rank, "connection closed");
+        } catch (IOException | RuntimeException e) {
+            lost(rank, e.toString());
+        }
+    }
+
+    private synchronized void register(int rank, String address, PrintWriter out) {
+        if (rank < 0 || rank >= world || addresses[rank] != null) {
+            throw new IllegalArgumentException("非法或重复的 rank: " + rank);
+        }
+        addresses[rank] = address;
+        writers[rank] = out;
+        registered++;
+        log("rank " + rank + " registered at " + address + " (" + registered + "/" + world + ")");
+        if (registered == world) {
+            String peers = "PEERS " + String.join(" ", addresses);
+            for (PrintWriter w : writers) {
+                w.println(peers);
+            }
+        }
+    }
+
+    private synchronized void report(int rank, long step, long millis) {
+        StepRecord record = steps.computeIfAbsent(step, s -> new StepRecord(world));
+        record.millis[rank] = millis;
+        record.reported++;
+        if (record.reported < world) return;
+
+        long[] sorted = record.millis.clone();
+        Arrays.sort(sorted);
+        // 取下中位数：两个 rank 时上中位数就是慢的那个自己，永远判不出掉队
+        long median = sorted[(world - 1) / 2];
+        for (int r = 0; r < world; r++) {
+            long m = record.millis[r];
+            if (m > median * STRAGGLER_FACTOR && m - median > STRAGGLER_MIN_GAP_MILLIS) {
+                straggles[r]++;
+                log(String.format("step %d: rank %d straggling, %d ms vs median %d ms", step, r, m, median));
+            }
+        }
+        steps.remove(step);
+    }
+
+    private synchronized void finish(int rank) {
+        if (rank >= 0) done[rank] = true;
+        finished++;
+        notifyAll();
+        if (finished == world) {
+            log("all workers finished; straggler counts per rank: " + Arrays.toString(straggles));
+        }
+    }
+
+    private synchronized void lost(int rank, String reason) {
+        if (rank >= 0 && done[rank]) return;
+        if (aborted) return;
+        aborted = true;
+        log("rank " + rank + " lost (" + reason + "), aborting the job");
+        for (int r = 0; r < world; r++) {
+            if (writers[r] != null && r != rank) {
+                writers[r].println("ABORT rank " + rank + " lost");
+            }
+        }
+        notifyAll();
+    }
+
+    private void watchdog() {
+        while (!server.isClosed()) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                for (Iterator<Map.Entry<Long, StepRecord>> it = steps.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<Long, StepRecord> e = it.next();
+                    StepRecord record = e.getValue();
+                    if (record.warned || now - record.firstReport < stepTimeoutMillis) continue;
+                    List<Integer> missing = new ArrayList<>();
+                    for (int r = 0; r < world; r++) {
+                        if (record.millis[r] < 0) missing.add(r);
+                    }
+                    log(String.format("step %d: still waiting on rank(s) %s after %d s",
+                            e.getKey(), missing, (now - record.firstReport) / 1000));
+                    record.warned = true;
+                }
+            }
+        }
+    }
+
+    private static void log(String message) {
+        System.out.println("[coordinator] " + message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * 用法：java alexnet.distributed.Coordinator port workers，用于多机时单独启动协调进程
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: Coordinator <port> <workers>");
+            System.exit(2);
+        }
+        try (Coordinator coordinator = new Coordinator(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Long.getLong("alexnet.dist.stepTimeoutMs", 60_000))) {
+            coordinator.start();
+            log("listening on port " + coordinator.getPort());
+            boolean ok = coordinator.awaitFinished(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            System.exit(ok ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package alexnet.distributed;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 梯度压缩器：把一个参数数组的梯度编码成字节，再在各个进程上解码累加。
+ * 编码结果不能逐段相加，{@link CompressedSync} 先 all-gather 全部进程的编码，再由每个进程按 rank 顺序解码，
+ * 因此所有进程得到逐位相同的平均梯度。一个实例只服务一个进程，可以按 index 保存每个参数数组的状态。
+ */
+public interface GradientCompressor {
+    /**
+     * 长度为 length 的数组编码后最多占多少字节
+     */
+    int maxBytes(int length);
+
+    /**
+     * 把第 index 个参数数组的梯度编码写入 out（小端）
+     */
+    void compress(int index, float[] gradient, ByteBuffer out);
+
+    /**
+     * 从 in 读出一条编码，解码后累加到 dst；dst 的长度即编码时的数组长度
+     */
+    void decompress(ByteBuffer in, float[] dst);
+
+    /**
+     * 按名字创建压缩器："topk:比例"（如 topk:0.001）、"int8"、"sign"
+     */
+    static GradientCompressor parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        switch (parts[0]) {
+            case "topk":
+                return new TopKCompressor(parts.length > 1 ? Double.parseDouble(parts[1]) : 0.001);
+            case "int8":
+                return new QuantizedCompressor();
+            case "sign":
+                return new SignCompressor();
+            default:
+                throw new IllegalArgumentException("未知的梯度压缩方式: " + spec);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package alexnet.distributed;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在本机启动一次分布式训练：进程内运行 {@link Coordinator}，再拉起 K 个 {@link Worker} JVM。
+ * 子进程沿用本 JVM 的类路径与启动参数（-Xmx、-D、--add-modules 等），输出直接接到本进程。
+ * <p>
+ * 用法：java alexnet.distributed.Launcher workers datasetPath，协调端口由 alexnet.dist.port 指定（默认 29500）。
+ */
+public class Launcher {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: Launcher <workers> <datasetPath>");
+            System.exit(2);
+        }
+        int world = Integer.parseInt(args[0]);
+        String datasetPath = args[1];
+        int port = Integer.getInteger("alexnet.dist.port", 29500);
+        String host = System.getProperty("alexnet.dist.host", "127.0.0.1");
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> jvmArgs = ManagementFactory.getRuntimeMXBean().getInputArguments();
+
+        try (Coordinator coordinator = new Coordinator(port, world, Long.getLong("alexnet.dist.stepTimeoutMs", 60_000))) {
+            coordinator.start();
+            System.out.println("[launcher] coordinator on port " + coordinator.getPort() + ", starting " + world + " worker(s)");
+
+            List<Process> workers = new ArrayList<>();
+            for (int rank = 0; rank < world; rank++) {
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(jvmArgs);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(Worker.class.getName());
+                command.add(host + ":" + coordinator.getPort());
+                command.add(String.valueOf(rank));
+                command.add(String.valueOf(world));
+                command.add(datasetPath);
+                workers.add(new ProcessBuilder(command).inheritIO().start());
+            }
+
+            // 任何一个 worker 异常退出，其余 worker 会在 all-reduce 上卡住，直接结束它们
+            int failures = 0;
+            boolean[] exited = new boolean[world];
+            int remaining = world;
+            while (remaining > 0) {
+                for (int rank = 0; rank < world; rank++) {
+                    Process p = workers.get(rank);
+                    if (exited[rank] || !p.waitFor(200, TimeUnit.MILLISECONDS)) continue;
+                    exited[rank] = true;
+                    remaining--;
+                    if (p.exitValue() != 0) {
+                        failures++;
+                        System.out.println("[launcher] rank " + rank + " exited with code " + p.exitValue());
+                        for (Process other : workers) {
+                            other.destroy();
+                        }
+                    }
+                }
+            }
+            System.out.println(failures == 0 ? "[launcher] all workers finished"
+                    : "[launcher] " + failures + " worker(s) failed");
+            System.exit(failures == 0 ? 0 : 1);
+        }
+    }
+}
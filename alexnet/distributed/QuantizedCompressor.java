@@ -0,0 +1,47 @@
+package alexnet.distributed;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 8 位量化：每 1024 个元素一块，块内按最大绝对值取缩放系数，元素四舍五入到 [-127, 127]。
+ * 每块多发 4 字节的缩放系数，压缩比约 4 倍；舍入误差进入残差。
+ */
+public class QuantizedCompressor extends ResidualCompressor {
+    private static final int BLOCK = 1024;
+
+    @Override
+    public int maxBytes(int length) {
+        return (length + BLOCK - 1) / BLOCK * Float.BYTES + length;
+    }
+
+    @Override
+    public void compress(int index, float[] gradient, ByteBuffer out) {
+        float[] acc = feedback(index, gradient);
+        for (int start = 0; start < acc.length; start += BLOCK) {
+            int end = Math.min(acc.length, start + BLOCK);
+            float max = 0;
+            for (int i = start; i < end; i++) {
+                max = Math.max(max, Math.abs(acc[i]));
+            }
+            float scale = max / 127;
+            out.putFloat(scale);
+            float inverse = max == 0 ? 0 : 127 / max;
+            for (int i = start; i < end; i++) {
+                int q = Math.round(acc[i] * inverse);
+                out.put((byte) q);
+                acc[i] -= q * scale;
+            }
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuffer in, float[] dst) {
+        for (int start = 0; start < dst.length; start += BLOCK) {
+            int end = Math.min(dst.length, start + BLOCK);
+            float scale = in.getFloat();
+            for (int i = start; i < end; i++) {
+                dst[i] += in.get() * scale;
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package alexnet.distributed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * worker 与 {@link Coordinator} 之间的连接：注册本进程的数据端口、取得全部 rank 的地址、逐步汇报耗时。
+ * 协调进程广播 ABORT 时打印原因并结束本进程，避免其余 worker 在 all-reduce 里等到超时。
+ */
+public class Rendezvous implements AutoCloseable {
+    private final Socket socket;
+    private final PrintWriter out;
+    private final List<InetSocketAddress> peers;
+    private volatile boolean closing;
+
+    private Rendezvous(Socket socket, PrintWriter out, List<InetSocketAddress> peers) {
+        this.socket = socket;
+        this.out = out;
+        this.peers = peers;
+    }
+
+    /**
+     * 连接协调进程（它可能稍后才启动，重试到超时）并注册，阻塞到全部 rank 注册完毕
+     */
+    public static Rendezvous join(InetSocketAddress coordinator, int rank, InetSocketAddress dataAddress,
+                                  long timeoutMillis) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Socket socket = null;
+        while (socket == null) {
+            try {
+                socket = new Socket(coordinator.getAddress(), coordinator.getPort());
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("无法连接协调进程 " + coordinator, e);
+                }
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("连接协调进程时被中断", ie);
+                }
+            }
+        }
+        socket.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        out.println("HELLO " + rank + " " + dataAddress.getHostString() + " " + dataAddress.getPort());
+
+        String line;
+        try {
+            line = in.readLine();
+        } catch (SocketTimeoutException e) {
+            socket.close();
+            throw new IOException("等待其余 worker 注册超时", e);
+        }
+        if (line == null || !line.startsWith("PEERS ")) {
+            socket.close();
+            throw new IOException("协调进程返回了意外的消息: " + line);
+        }
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String address : line.substring(6).trim().split("\\s+")) {
+            int colon = address.lastIndexOf(':');
+            peers.add(new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+        }
+        socket.setSoTimeout(0);
+
+        Rendezvous rendezvous = new Rendezvous(socket, out, peers);
+        Thread listener = new Thread(() -> rendezvous.listen(in, rank), "rendezvous-" + rank);
+        listener.setDaemon(true);
+        listener.start();
+        return rendezvous;
+    }
+
+    private void listen(BufferedReader in, int rank) {
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("ABORT")) {
+                    System.err.println("[rank " + rank + "] coordinator: " + line);
+                    System.exit(3);
+                }
+            }
+        } catch (IOException e) {
+            // 下面统一处理
+        }
+        if (!closing) {
+            System.err.println("[rank " + rank + "] lost connection to coordinator");
+            System.exit(3);
+        }
+    }
+
+    /**
+     * 按 rank 排列的数据端口地址
+     */
+    public List<InetSocketAddress> getPeers() {
+        return peers;
+    }
+
+    /**
+     * 汇报第 step 步的本地计算耗时（不含通信），供协调进程识别掉队的 rank。须在该步的 all-reduce 之前调用，
+     * 否则卡在计算里的 rank 会把其余 rank 的汇报一起挡在交换之后
+     */
+    public void reportStep(long step, long computeMillis) {
+        out.println("STEP " + step + " " + computeMillis);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        out.println("DONE");
+        socket.close();
+    }
+}
@@ -0,0 +1,30 @@
+package alexnet.distributed;
+
+import java.util.Arrays;
+
+/**
+ * 带误差反馈的有损压缩器的公共部分：每个参数数组保留一份残差，即历次压缩中没有发出去的部分。
+ * 压缩前先把残差加到本步梯度上，编码后再把"累加值减去解码值"写回残差，丢掉的梯度在后续步骤中补发，
+ * 长期看不会丢失。残差与参数一样大，AlexNet 约多占 240MB。
+ */
+abstract class ResidualCompressor implements GradientCompressor {
+    private float[][] residuals = new float[0][];
+
+    /**
+     * 把 gradient 加到第 index 个残差上并返回它；子类在其上就地编码，并把未发出的部分留在里面
+     */
+    protected float[] feedback(int index, float[] gradient) {
+        if (index >= residuals.length) {
+            residuals = Arrays.copyOf(residuals, index + 1);
+        }
+        float[] residual = residuals[index];
+        if (residual == null || residual.length != gradient.length) {
+            residual = new float[gradient.length];
+            residuals[index] = residual;
+        }
+        for (int i = 0; i < residual.length; i++) {
+            residual[i] += gradient[i];
+        }
+        return residual;
+    }
+}
@@ -0,0 +1,476 @@
+package alexnet.distributed;
+
+import alexnet.network.GradientSync;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 基于 TCP 的环形 all-reduce。K 个进程连成环，每个进程只向下一个发送、从上一个接收；
+ * 把拼接起来的全部梯度分成 K 段，先做 K-1 步 reduce-scatter（每步把收到的一段累加到本地），
+ * 再做 K-1 步 all-gather（每步用收到的一段覆盖本地），每个进程收发的数据量约为 2(K-1)/K 倍梯度大小，与 K 无关。
+ * <p>
+ * 每段再按 1MB 切块流水线化：发送线程发出第 g 步的某一块之前，只需等接收方把第 g-1 步对应的那一块处理完，
+ * 传输与累加在块粒度上重叠。套接字为非阻塞模式，收发都用 Selector 等待，超过 timeout 没有进展即报错，
+ * 错误信息中带有对端 rank，便于定位掉线或卡住的进程。
+ * <p>
+ * 压缩后的梯度不能逐段相加，另有 {@link #allGather} 在同一个环上交换各进程的变长消息。
+ */
+public class RingAllReduce implements GradientSync, AutoCloseable {
+    private static final int CHUNK_FLOATS = 1 << 18;
+    private static final int HANDSHAKE_MAGIC = 0x52494E47;  // "RING"
+
+    private final int rank;
+    private final int world;
+    private final long timeoutMillis;
+    private final SocketChannel next;
+    private final SocketChannel prev;
+    private final Selector sendSelector;
+    private final Selector recvSelector;
+    private final ByteBuffer sendBytes = ByteBuffer.allocateDirect(CHUNK_FLOATS * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer recvBytes = ByteBuffer.allocateDirect(CHUNK_FLOATS * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final FloatBuffer sendFloats = sendBytes.asFloatBuffer();
+    private final FloatBuffer recvFloats = recvBytes.asFloatBuffer();
+    private final float[] scratch = new float[CHUNK_FLOATS];
+    private final ExecutorService sender;
+
+    // 接收方的进度：已完成第 progressStep 步中前 progressElements 个元素；发送线程据此决定能否发下一块
+    private final Object progressLock = new Object();
+    private int progressStep;
+    private long progressElements;
+    private boolean failed;
+
+    private volatile long bytesSent;        // 只由发送线程写
+    private volatile long bytesReceived;    // 只由调用 allReduce 的线程写
+
+    private RingAllReduce(int rank, int world, long timeoutMillis, SocketChannel next, SocketChannel prev)
+            throws IOException {
+        this.rank = rank;
+        this.world = world;
+        this.timeoutMillis = timeoutMillis;
+        this.next = next;
+        this.prev = prev;
+        this.sendSelector = Selector.open();
+        this.recvSelector = Selector.open();
+        if (next != null) {
+            next.configureBlocking(false);
+            next.register(sendSelector, SelectionKey.OP_WRITE);
+            prev.register(recvSelector, SelectionKey.OP_READ);
+        }
+        this.sender = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ring-sender-" + rank);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 建立环：连接 rank+1 的数据端口，并在 listener 上接受 rank-1 的连接；两端互相校验 rank
+     *
+     * @param peers    各 rank 的数据端口地址
+     * @param listener 本进程已绑定在 peers[rank] 上的监听端口
+     */
+    public static RingAllReduce connect(int rank, List<InetSocketAddress> peers, ServerSocketChannel listener,
+                                        long timeoutMillis) throws IOException {
+        int world = peers.size();
+        if (world == 1) {
+            return new RingAllReduce(rank, 1, timeoutMillis, null, null);
+        }
+        int nextRank = (rank + 1) % world;
+        int prevRank = (rank + world - 1) % world;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        // 下一个进程可能还没开始监听，重试到超时
+        SocketChannel next = null;
+        while (next == null) {
+            try {
+                next = SocketChannel.open(peers.get(nextRank));
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("rank " + rank + " 无法连接 rank " + nextRank + " " + peers.get(nextRank), e);
+                }
+                sleep(100);
+            }
+        }
+        next.socket().setTcpNoDelay(true);
+        ByteBuffer hello = ByteBuffer.allocate(8).putInt(HANDSHAKE_MAGIC).putInt(rank);
+        hello.flip();
+        while (hello.hasRemaining()) {
+            next.write(hello);
+        }
+
+        listener.configureBlocking(false);
+        SocketChannel prev;
+        ByteBuffer peer = ByteBuffer.allocate(8);
+        try (Selector selector = Selector.open()) {
+            listener.register(selector, SelectionKey.OP_ACCEPT);
+            while ((prev = listener.accept()) == null) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("rank " + rank + " 等待 rank " + prevRank + " 连接超时");
+                }
+                selector.select(remaining);
+                selector.selectedKeys().clear();
+            }
+            prev.configureBlocking(false);
+            prev.register(selector, SelectionKey.OP_READ);
+            while (peer.hasRemaining()) {
+                int n = prev.read(peer);
+                if (n < 0) {
+                    throw new IOException("rank " + prevRank + " 在握手时断开");
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (n == 0 && (remaining <= 0 || selector.select(remaining) == 0)) {
+                    throw new IOException("rank " + rank + " 等待 rank " + prevRank + " 握手超时");
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+        peer.flip();
+        int magic = peer.getInt();
+        int peerRank = peer.getInt();
+        if (magic != HANDSHAKE_MAGIC || peerRank != prevRank) {
+            throw new IOException("rank " + rank + " 期望来自 rank " + prevRank + " 的连接，实际为 rank " + peerRank);
+        }
+        prev.socket().setTcpNoDelay(true);
+        return new RingAllReduce(rank, world, timeoutMillis, next, prev);
+    }
+
+    /**
+     * 求全体进程梯度的平均值，原地写回
+     */
+    @Override
+    public void synchronize(float[][] gradients) {
+        try {
+            allReduce(gradients);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (world > 1) {
+            float scale = 1.0f / world;
+            for (float[] g : gradients) {
+                for (int i = 0; i < g.length; i++) {
+                    g[i] *= scale;
+                }
+            }
+        }
+    }
+
+    /**
+     * 把 buffers 首尾拼接看成一个向量，原地替换为全体进程之和；所有进程的 buffers 形状必须一致
+     */
+    public void allReduce(float[][] buffers) throws IOException {
+        if (world == 1) return;
+        Concatenation data = new Concatenation(buffers);
+        long[] bounds = new long[world + 1];
+        for (int s = 0; s <= world; s++) {
+            bounds[s] = data.length * s / world;
+        }
+        int steps = 2 * (world - 1);
+        exchange(() -> {
+            for (int g = 0; g < steps; g++) {
+                int seg = sendSegment(g);
+                long start = bounds[seg];
+                long length = bounds[seg + 1] - start;
+                for (long done = 0; done < length; done += CHUNK_FLOATS) {
+                    int n = (int) Math.min(CHUNK_FLOATS, length - done);
+                    if (g > 0) {
+                        awaitProgress(g - 1, done + n);
+                    }
+                    sendFloats.clear();
+                    data.copyTo(start + done, n, sendFloats);
+                    sendBytes.clear().limit(n * Float.BYTES);
+                    writeFully();
+                }
+            }
+            return null;
+        }, () -> {
+            for (int g = 0; g < steps; g++) {
+                int seg = recvSegment(g);
+                long start = bounds[seg];
+                long length = bounds[seg + 1] - start;
+                boolean accumulate = g < world - 1;
+                for (long done = 0; done < length; done += CHUNK_FLOATS) {
+                    int n = (int) Math.min(CHUNK_FLOATS, length - done);
+                    recvBytes.clear().limit(n * Float.BYTES);
+                    readFully();
+                    recvFloats.clear();
+                    recvFloats.get(scratch, 0, n);
+                    data.merge(start + done, n, scratch, accumulate);
+                    reportProgress(g, done + n);
+                }
+            }
+        });
+    }
+
+    /**
+     * 环形 all-gather 变长字节消息：返回按 rank 排列的全部消息（本进程那一条即 local 本身）。
+     * 第 s 步把 rank-s 的消息转发给下一个进程，同时接收 rank-s-1 的消息，每条消息带 4 字节长度前缀。
+     * 用于压缩后的梯度：压缩结果不能逐段相加，只能先收齐再各自解码
+     */
+    public ByteBuffer[] allGather(ByteBuffer local) throws IOException {
+        ByteBuffer[] messages = new ByteBuffer[world];
+        messages[rank] = local.duplicate();
+        if (world == 1) return messages;
+
+        int steps = world - 1;
+        exchange(() -> {
+            for (int s = 0; s < steps; s++) {
+                if (s > 0) {
+                    awaitProgress(s - 1, 1);
+                }
+                ByteBuffer message = messages[Math.floorMod(rank - s, world)].duplicate();
+                sendBytes.clear();
+                sendBytes.putInt(message.remaining());
+                do {
+                    int n = Math.min(sendBytes.remaining(), message.remaining());
+                    ByteBuffer part = message.duplicate();
+                    part.limit(part.position() + n);
+                    sendBytes.put(part);
+                    message.position(message.position() + n);
+                    sendBytes.flip();
+                    writeFully();
+                    sendBytes.clear();
+                } while (message.hasRemaining());
+            }
+            return null;
+        }, () -> {
+            for (int s = 0; s < steps; s++) {
+                recvBytes.clear().limit(Integer.BYTES);
+                readFully();
+                int length = recvBytes.getInt(0);
+                ByteBuffer message = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+                while (message.hasRemaining()) {
+                    recvBytes.clear().limit(Math.min(recvBytes.capacity(), message.remaining()));
+                    readFully();
+                    recvBytes.flip();
+                    message.put(recvBytes);
+                }
+                message.flip();
+                messages[Math.floorMod(rank - s - 1, world)] = message;
+                reportProgress(s, 1);
+            }
+        });
+        return messages;
+    }
+
+    private interface Receiver {
+        void run() throws IOException;
+    }
+
+    /**
+     * 发送线程执行 send、当前线程执行 receive，任一方失败即让另一方停下，异常统一转为 IOException
+     */
+    private void exchange(Callable<Void> send, Receiver receive) throws IOException {
+        synchronized (progressLock) {
+            progressStep = -1;
+            progressElements = 0;
+            failed = false;
+        }
+        Future<?> sending = sender.submit(send);
+        try {
+            receive.run();
+            sending.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (IOException | RuntimeException e) {
+            abort(sending);
+            throw e;
+        } catch (ExecutionException e) {
+            abort(sending);
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (TimeoutException e) {
+            abort(sending);
+            throw new IOException("rank " + rank + " 向 rank " + (rank + 1) % world + " 发送超时");
+        } catch (InterruptedException e) {
+            abort(sending);
+            Thread.currentThread().interrupt();
+            throw new IOException("环上的数据交换被中断", e);
+        }
+    }
+
+    private void reportProgress(int step, long elements) {
+        synchronized (progressLock) {
+            progressStep = step;
+            progressElements = elements;
+            progressLock.notifyAll();
+        }
+    }
+
+    // reduce-scatter 第 t 步发送段 rank-t；all-gather 第 t 步发送段 rank+1-t。第 g 步发送的正是第 g-1 步接收的段
+    private int sendSegment(int g) {
+        int shift = g < world - 1 ? -g : 1 - (g - (world - 1));
+        return Math.floorMod(rank + shift, world);
+    }
+
+    private int recvSegment(int g) {
+        return sendSegment(g + 1);
+    }
+
+    private void awaitProgress(int step, long elements) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (progressLock) {
+            while (progressStep < step || progressStep == step && progressElements < elements) {
+                if (failed) {
+                    throw new IOException("接收失败，停止发送");
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("rank " + rank + " 等待 rank " + (rank + world - 1) % world + " 的数据超时");
+                }
+                progressLock.wait(remaining);
+            }
+        }
+    }
+
+    private void abort(Future<?> sending) {
+        synchronized (progressLock) {
+            failed = true;
+            progressLock.notifyAll();
+        }
+        sending.cancel(true);
+    }
+
+    private void writeFully() throws IOException {
+        while (sendBytes.hasRemaining()) {
+            if (sendSelector.select(timeoutMillis) == 0) {
+                throw new IOException("rank " + rank + " 向 rank " + (rank + 1) % world + " 发送超时（"
+                        + timeoutMillis + " ms 无进展）");
+            }
+            sendSelector.selectedKeys().clear();
+            bytesSent += next.write(sendBytes);
+        }
+    }
+
+    private void readFully() throws IOException {
+        while (recvBytes.hasRemaining()) {
+            int n = prev.read(recvBytes);
+            if (n < 0) {
+                throw new IOException("rank " + (rank + world - 1) % world + " 断开了连接");
+            }
+            if (n == 0) {
+                if (recvSelector.select(timeoutMillis) == 0) {
+                    throw new IOException("rank " + rank + " 等待 rank " + (rank + world - 1) % world
+                            + " 的数据超时（" + timeoutMillis + " ms 无进展）");
+                }
+                recvSelector.selectedKeys().clear();
+            }
+            bytesReceived += n;
+        }
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public int getWorldSize() {
+        return world;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    @Override
+    public void close() throws IOException {
+        sender.shutdownNow();
+        sendSelector.close();
+        recvSelector.close();
+        if (next != null) {
+            next.close();
+            prev.close();
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("连接被中断", e);
+        }
+    }
+
+    /**
+     * 多个数组首尾拼接成的逻辑向量，按全局下标区间读写
+     */
+    private static final class Concatenation {
+        final float[][] arrays;
+        final long[] starts;
+        final long length;
+
+        Concatenation(float[][] arrays) {
+            this.arrays = arrays;
+            this.starts = new long[arrays.length + 1];
+            for (int i = 0; i < arrays.length; i++) {
+                starts[i + 1] = starts[i] + arrays[i].length;
+            }
+            this.length = starts[arrays.length];
+        }
+
+        void copyTo(long from, int n, FloatBuffer out) {
+            int a = locate(from);
+            while (n > 0) {
+                int offset = (int) (from - starts[a]);
+                int len = Math.min(n, arrays[a].length - offset);
+                out.put(arrays[a], offset, len);
+                from += len;
+                n -= len;
+                a++;
+            }
+        }
+
+        void merge(long from, int n, float[] src, boolean accumulate) {
+            int a = locate(from);
+            int s = 0;
+            while (n > 0) {
+                int offset = (int) (from - starts[a]);
+                int len = Math.min(n, arrays[a].length - offset);
+                float[] dst = arrays[a];
+                if (accumulate) {
+                    for (int i = 0; i < len; i++) {
+                        dst[offset + i] += src[s + i];
+                    }
+                } else {
+                    System.arraycopy(src, s, dst, offset, len);
+                }
+                from += len;
+                s += len;
+                n -= len;
+                a++;
+            }
+        }
+
+        // 包含全局下标 index 的数组（跳过空数组）
+        private int locate(long index) {
+            int lo = 0;
+            int hi = arrays.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (starts[mid] <= index) lo = mid;
+                else hi = mid - 1;
+            }
+            while (lo < arrays.length - 1 && starts[lo + 1] <= index) lo++;
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package alexnet.distributed;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Top-k 稀疏化：只发送累加值中绝对值最大的 k 个元素（下标 + 值），其余留在残差里。
+ * 阈值先由均匀采样的分位数估计，再扫一遍收集候选，候选过多或过少时二分调整阈值重扫；
+ * 候选多于 k 个时在候选中精确取前 k 个，并列时取下标小的。fc6 量级的数组通常扫 1~2 遍。
+ */
+public class TopKCompressor extends ResidualCompressor {
+    private static final int SAMPLE = 4096;
+    private static final int MAX_PASSES = 32;
+
+    private final double fraction;
+    private int[] candidates = new int[0];
+    private float[] magnitudes = new float[0];
+
+    /**
+     * @param fraction 保留的元素比例，如 0.001
+     */
+    public TopKCompressor(double fraction) {
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("保留比例必须在 (0, 1] 内: " + fraction);
+        }
+        this.fraction = fraction;
+    }
+
+    private int k(int length) {
+        return (int) Math.min(length, Math.max(1, Math.ceil(length * fraction)));
+    }
+
+    @Override
+    public int maxBytes(int length) {
+        return Integer.BYTES + k(length) * (Integer.BYTES + Float.BYTES);
+    }
+
+    @Override
+    public void compress(int index, float[] gradient, ByteBuffer out) {
+        float[] acc = feedback(index, gradient);
+        int k = k(acc.length);
+        int limit = 2 * k;
+        if (candidates.length < limit) {
+            candidates = new int[limit];
+            magnitudes = new float[limit];
+        }
+
+        // 在 [low, high) 内二分阈值，直到候选个数落在 [k, 2k]
+        float threshold = estimateThreshold(acc, k);
+        float low = 0;
+        float high = Float.POSITIVE_INFINITY;
+        int count = 0;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            count = collect(acc, threshold, limit);
+            if (count > limit) {
+                low = threshold;
+                threshold = high == Float.POSITIVE_INFINITY ? threshold * 2 : (low + high) / 2;
+            } else if (count < k && threshold > Float.MIN_NORMAL) {
+                high = threshold;
+                threshold = Math.max(Float.MIN_NORMAL, (low + high) / 2);
+            } else {
+                break;
+            }
+        }
+        count = Math.min(count, limit);
+
+        // 候选多于 k 个时，以第 k 大的绝对值为界；等于界的按下标顺序补足
+        float cutoff = 0;
+        if (count > k) {
+            float[] sorted = Arrays.copyOf(magnitudes, count);
+            Arrays.sort(sorted);
+            cutoff = sorted[count - k];
+        }
+        int above = 0;
+        for (int c = 0; c < count; c++) {
+            if (magnitudes[c] > cutoff) above++;
+        }
+        int ties = Math.min(count, k) - above;
+
+        int sent = Math.min(count, k);
+        out.putInt(sent);
+        for (int c = 0; c < count; c++) {
+            float m = magnitudes[c];
+            if (count > k && m < cutoff) continue;
+            if (count > k && m == cutoff) {
+                if (ties == 0) continue;
+                ties--;
+            }
+            int i = candidates[c];
+            out.putInt(i);
+            out.putFloat(acc[i]);
+            acc[i] = 0;
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuffer in, float[] dst) {
+        int count = in.getInt();
+        for (int c = 0; c < count; c++) {
+            int i = in.getInt();
+            dst[i] += in.getFloat();
+        }
+    }
+
+    // 按固定步长采样绝对值，取第 (1 - fraction) 分位数作为初始阈值
+    private float estimateThreshold(float[] acc, int k) {
+        int stride = Math.max(1, acc.length / SAMPLE);
+        int n = (acc.length + stride - 1) / stride;
+        float[] sample = new float[n];
+        for (int s = 0; s < n; s++) {
+            sample[s] = Math.abs(acc[s * stride]);
+        }
+        Arrays.sort(sample);
+        int keep = (int) Math.ceil((double) n * k / acc.length);
+        float threshold = sample[Math.max(0, n - Math.max(1, keep))];
+        return Math.max(threshold, Float.MIN_NORMAL);
+    }
+
+    // 收集绝对值不小于 threshold 的下标，最多记录 limit 个；返回总数（超过 limit 时返回 limit + 1）
+    private int collect(float[] acc, float threshold, int limit) {
+        int count = 0;
+        for (int i = 0; i < acc.length; i++) {
+            float m = Math.abs(acc[i]);
+            if (m >= threshold) {
+                if (count == limit) return limit + 1;
+                candidates[count] = i;
+                magnitudes[count] = m;
+                count++;
+            }
+        }
+        return count;
+    }
+}
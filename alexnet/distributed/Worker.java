@@ -0,0 +1,200 @@
+package alexnet.distributed;
+
+import alexnet.core.Tensor;
+import alexnet.data.Augmentation;
+import alexnet.data.DataLoader;
+import alexnet.data.DataLoader.Batch;
+import alexnet.network.AlexNet;
+import alexnet.network.Checkpoint;
+import alexnet.network.CheckpointWriter;
+import alexnet.network.DataParallelTrainer;
+import alexnet.network.GradientSync;
+import alexnet.network.ParameterLayer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分布式训练的一个进程。每个 rank 只读数据集的一个分片，本地按 {@link DataParallelTrainer} 训练，
+ * 每步在更新前经 {@link RingAllReduce} 求全体 rank 的平均梯度，因此各 rank 的参数始终一致。
+ * <p>
+ * 用法：java alexnet.distributed.Worker coordHost:port rank world datasetPath，一般由 {@link Launcher} 拉起。
+ * 可选系统属性：alexnet.batch（每个 rank 的 batch，默认 8）、alexnet.epochs、alexnet.lr、
+ * alexnet.maxSteps（到步数即停，0 为不限）、alexnet.replicas、alexnet.dist.host（本进程对外的地址）、
+ * alexnet.dist.timeoutMs、alexnet.dist.compression（梯度压缩方式，见 {@link GradientCompressor#parse}，默认不压缩）。
+ */
+public class Worker {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("usage: Worker <coordinatorHost:port> <rank> <world> <datasetPath>");
+            System.exit(2);
+        }
+        int colon = args[0].lastIndexOf(':');
+        InetSocketAddress coordinator = new InetSocketAddress(args[0].substring(0, colon),
+                Integer.parseInt(args[0].substring(colon + 1)));
+        int rank = Integer.parseInt(args[1]);
+        int world = Integer.parseInt(args[2]);
+        String datasetPath = args[3];
+
+        int imageWidth = 227;
+        int imageHeight = 227;
+        int channels = 3;
+        int batchSize = Integer.getInteger("alexnet.batch", 8);
+        int numEpochs = Integer.getInteger("alexnet.epochs", 5);
+        double learningRate = Double.parseDouble(System.getProperty("alexnet.lr", "0.01"));
+        long maxSteps = Long.getLong("alexnet.maxSteps", 0);
+        int numClasses = 1000; // 请根据数据集实际类数修改！
+        int checkpointEvery = 500;
+        int checkpointsToKeep = 3;
+        int replicas = Integer.getInteger("alexnet.replicas", 1);
+        String host = System.getProperty("alexnet.dist.host", "127.0.0.1");
+        long timeoutMillis = Long.getLong("alexnet.dist.timeoutMs", 120_000);
+        Path checkpointDir = Paths.get("checkpoints");
+        String tag = "[rank " + rank + "] ";
+
+        try (ServerSocketChannel listener = ServerSocketChannel.open().bind(new InetSocketAddress(host, 0));
+             Rendezvous rendezvous = Rendezvous.join(coordinator, rank,
+                     (InetSocketAddress) listener.getLocalAddress(), timeoutMillis);
+             RingAllReduce ring = RingAllReduce.connect(rank, rendezvous.getPeers(), listener, timeoutMillis);
+             CheckpointWriter checkpoints = rank == 0 ? new CheckpointWriter(checkpointDir, "alexnet", checkpointsToKeep) : null;
+             DataLoader loader = new DataLoader(datasetPath, imageWidth, imageHeight, channels)) {
+            System.out.println(tag + "joined ring of " + world);
+
+            // 各 rank 分片不重叠；分片缓存按整个数据集组织，多个进程共用同一目录会互相重建，这里用内存缓存
+            loader.setShard(rank, world);
+            loader.enableImageCache(Long.getLong("alexnet.imageCacheBytes", 512L << 20));
+            Augmentation augmentation = new Augmentation(42);
+            augmentation.setRandomCrop(0.875f);
+            augmentation.setScaleJitter(0.9f, 1.1f);
+            augmentation.setFlipProbability(0.5f);
+            augmentation.setColorJitter(0.2f, 0.2f, 0.2f);
+            loader.setAugmentation(augmentation);
+
+            // 只有 rank 0 初始化或加载参数，其余 rank 全零，一次求和即把 rank 0 的参数广播出去
+            Path resume = rank == 0 ? checkpoints.latest() : null;
+            AlexNet net = resume != null ? Checkpoint.load(resume) : new AlexNet(rank == 0);
+            long step = broadcastFromRankZero(ring, net, resume != null ? checkpoints.stepOf(resume) : 0);
+            if (resume != null) {
+                System.out.println(tag + "resumed from " + resume);
+            }
+
+            DataParallelTrainer trainer = new DataParallelTrainer(net, replicas);
+            trainer.planBuffers(batchSize, channels, imageHeight, imageWidth);
+            String compression = System.getProperty("alexnet.dist.compression", "none");
+            CompressedSync compressed = compression.equals("none") ? null
+                    : new CompressedSync(ring, GradientCompressor.parse(compression), CompressedSync.DEFAULT_MIN_LENGTH);
+            GradientSync sync = compressed != null ? compressed : ring;
+            long[] syncNanos = new long[1];
+            long[] current = new long[2];   // {正在进行的步数, 该步开始的 nanoTime}
+            trainer.setGradientSync(gradients -> {
+                long t0 = System.nanoTime();
+                // 本地计算到这里已经结束，在 all-reduce 之前汇报：卡在计算里的 rank 不会汇报，协调进程才能点出它
+                rendezvous.reportStep(current[0], (t0 - current[1]) / 1_000_000);
+                sync.synchronize(gradients);
+                syncNanos[0] += System.nanoTime() - t0;
+            });
+            System.out.printf(tag + "%d of %d samples, batch %d, %d replica(s), gradient compression: %s%n",
+                    loader.epochSize(), loader.size(), batchSize, replicas, compression);
+
+            Tensor target = null;
+            boolean stop = false;
+            for (int epoch = 1; epoch <= numEpochs && !stop; epoch++) {
+                loader.shuffleData();
+                float totalLoss = 0;
+                int totalCorrect = 0;
+                int totalSamples = 0;
+                long epochSync = 0;
+                long epochStart = System.nanoTime();
+
+                // 各分片等长，各 rank 每个 epoch 的步数相同，all-reduce 不会错位
+                while (loader.hasNextBatch(batchSize)) {
+                    Batch batch = loader.nextBatch(batchSize);
+                    List<Integer> labels = batch.labels;
+                    int n = labels.size();
+                    target = Tensor.reuse(target, n, 1, 1, numClasses);
+                    target.fill(0);
+                    for (int i = 0; i < n; i++) {
+                        target.set(i, 0, 0, labels.get(i), 1.0f);
+                    }
+
+                    current[0] = step + 1;
+                    current[1] = System.nanoTime();
+                    syncNanos[0] = 0;
+                    float loss = trainer.step(batch.input, target, learningRate);
+                    epochSync += syncNanos[0];
+                    step++;
+
+                    totalLoss += loss * n;
+                    int[] predictions = trainer.getPredictions();
+                    for (int i = 0; i < n; i++) {
+                        if (predictions[i] == labels.get(i)) totalCorrect++;
+                    }
+                    totalSamples += n;
+
+                    if (checkpoints != null && step % checkpointEvery == 0 && !checkpoints.save(net, step)) {
+                        System.out.println(tag + "checkpoint at step " + step + " skipped: previous write still running");
+                    }
+                    if (maxSteps > 0 && step >= maxSteps) {
+                        stop = true;
+                        break;
+                    }
+                }
+
+                if (totalSamples > 0) {
+                    double seconds = (System.nanoTime() - epochStart) / 1e9;
+                    System.out.printf(tag + "epoch %d: loss %.4f | accuracy %.2f%% | %.1f s, %.1f s in all-reduce%n",
+                            epoch, totalLoss / totalSamples, (float) totalCorrect / totalSamples * 100,
+                            seconds, epochSync / 1e9);
+                }
+            }
+            System.out.printf(tag + "done at step %d, sent %.1f MB, received %.1f MB, parameter checksum %016x%n",
+                    step, ring.getBytesSent() / 1048576.0, ring.getBytesReceived() / 1048576.0, checksum(net));
+            if (compressed != null) {
+                System.out.printf(tag + "compressed %.1f MB of gradients to %.1f MB (%.1fx)%n",
+                        compressed.getRawBytes() / 1048576.0, compressed.getCompressedBytes() / 1048576.0,
+                        compressed.getCompressionRatio());
+            }
+        } catch (IOException e) {
+            System.err.println(tag + "failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 以 rank 0 的参数与步数覆盖所有 rank：其余 rank 传入全零参数与 0 步，求和后即为 rank 0 的值。
+     * 步数拆成两个 24 位整数放进 float 以保证精确
+     */
+    private static long broadcastFromRankZero(RingAllReduce ring, AlexNet net, long step) throws IOException {
+        List<float[]> buffers = new ArrayList<>();
+        for (ParameterLayer layer : net.getParameterLayers()) {
+            for (float[] p : layer.getParameters()) {
+                buffers.add(p);
+            }
+        }
+        float[] stepParts = {step >>> 24, step & 0xFFFFFF};
+        buffers.add(stepParts);
+        ring.allReduce(buffers.toArray(new float[0][]));
+        for (ParameterLayer layer : net.getParameterLayers()) {
+            layer.markWeightsChanged();
+        }
+        return ((long) stepParts[0] << 24) | (long) stepParts[1];
+    }
+
+    // 参数位模式的简单哈希，用来核对各 rank 的参数是否逐位一致
+    private static long checksum(AlexNet net) {
+        long h = 1125899906842597L;
+        for (ParameterLayer layer : net.getParameterLayers()) {
+            for (float[] p : layer.getParameters()) {
+                for (float v : p) {
+                    h = 31 * h + Float.floatToRawIntBits(v);
+                }
+            }
+        }
+        return h;
+    }
+}
@@ -0,0 +1,19 @@
+package alexnet.layers;
+
+import alexnet.core.Tensor;
+
+/**
+ * 卷积的具体计算实现，由 {@link ConvLayer} 按层选择。
+ * 引擎可以在内部缓存工作区或变换后的卷积核，因此一个引擎实例只应挂在一个 ConvLayer 上。
+ */
+public interface ConvEngine {
+    /**
+     * 前向：output 已按 [N][outChannels][outH][outW] 分配，由引擎写满（含偏置）
+     */
+    void forward(ConvLayer layer, Tensor input, Tensor output);
+
+    /**
+     * 反向：把权重/偏置梯度累加进 layer 的梯度累加器，并把输入梯度写入已清零的 gradInput
+     */
+    void backward(ConvLayer layer, Tensor input, Tensor gradOutput, Tensor gradInput);
+}
@@ -1,42 +1,59 @@
 package alexnet.layers;
 
 import alexnet.core.Tensor;
-import alexnet.network.Layer;
+import alexnet.core.VectorOps;
+import alexnet.network.ParameterLayer;
 
+import java.util.Arrays;
 import java.util.Random;
 
-public class ConvLayer implements Layer {
+public class ConvLayer implements ParameterLayer {
     private int inChannels;
     private int outChannels;
     private int kernelSize;
     private int stride;
     private int padding;
 
-    private float[][][][] weights;  // [outChannels][inChannels][kernelSize][kernelSize]
+    private float[] weights;        // [outChannels][inChannels][kernelSize][kernelSize] 平铺
     private float[] biases;         // [outChannels]
 
     private Tensor input;           // 缓存用于反向传播
-    private float[][][][] gradWeights;
+    private float[] gradWeights;    // 在整个 mini-batch 上累加，update 后清零；第一次反向时才分配，纯推理的模型不占这部分内存
     private float[] gradBiases;
 
+    private ConvEngine engine;      // 具体的卷积计算实现
+    private long weightsVersion;    // 权重每变化一次加一，供引擎判断缓存的变换核是否失效
+
+    private Tensor outputBuffer;    // 由 TensorArena 绑定，每次迭代复用
+    private Tensor gradInputBuffer;
+
     public ConvLayer(int inChannels, int outChannels, int kernelSize, int stride, int padding) {
+        this(inChannels, outChannels, kernelSize, stride, padding, new DirectConvEngine());
+    }
+
+    public ConvLayer(int inChannels, int outChannels, int kernelSize, int stride, int padding, ConvEngine engine) {
+        this(inChannels, outChannels, kernelSize, stride, padding, engine, true);
+    }
+
+    /**
+     * @param randomInit 为 false 时权重保持全零，用于随后从 checkpoint 加载、省掉随机初始化
+     */
+    public ConvLayer(int inChannels, int outChannels, int kernelSize, int stride, int padding, ConvEngine engine,
+                     boolean randomInit) {
         this.inChannels = inChannels;
         this.outChannels = outChannels;
         this.kernelSize = kernelSize;
         this.stride = stride;
         this.padding = padding;
-
-        // 权重初始化 (Xavier)
-        Random rand = new Random();
-        float limit = (float) Math.sqrt(6.0 / (inChannels * kernelSize * kernelSize + outChannels));
-        weights = new float[outChannels][inChannels][kernelSize][kernelSize];
-        for (int o = 0; o < outChannels; o++) {
-            for (int i = 0; i < inChannels; i++) {
-                for (int kh = 0; kh < kernelSize; kh++) {
-                    for (int kw = 0; kw < kernelSize; kw++) {
-                        weights[o][i][kh][kw] = (rand.nextFloat() * 2 - 1) * limit;
-                    }
-                }
+        this.engine = engine;
+
+        weights = new float[outChannels * inChannels * kernelSize * kernelSize];
+        if (randomInit) {
+            // 权重初始化 (Xavier)
+            Random rand = new Random();
+            float limit = (float) Math.sqrt(6.0 / (inChannels * kernelSize * kernelSize + outChannels));
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = (rand.nextFloat() * 2 - 1) * limit;
             }
         }
 
@@ -47,87 +64,144 @@ public class ConvLayer implements Layer {
     public Tensor forward(Tensor input) {
         this.input = input; // 缓存输入用于反向传播
 
-        int inH = input.getHeight();
-        int inW = input.getWidth();
-        int outH = (inH - kernelSize + 2 * padding) / stride + 1;
-        int outW = (inW - kernelSize + 2 * padding) / stride + 1;
-
-        Tensor output = new Tensor(outChannels, outH, outW);
-        float[][][] inData = input.getData();
-
-        for (int oc = 0; oc < outChannels; oc++) {
-            for (int oh = 0; oh < outH; oh++) {
-                for (int ow = 0; ow < outW; ow++) {
-                    float sum = biases[oc];
-                    for (int ic = 0; ic < inChannels; ic++) {
-                        for (int kh = 0; kh < kernelSize; kh++) {
-                            for (int kw = 0; kw < kernelSize; kw++) {
-                                int ih = oh * stride + kh - padding;
-                                int iw = ow * stride + kw - padding;
-                                if (ih >= 0 && ih < inH && iw >= 0 && iw < inW) {
-                                    sum += inData[ic][ih][iw] * weights[oc][ic][kh][kw];
-                                }
-                            }
-                        }
-                    }
-                    output.set(oc, oh, ow, sum);
-                }
-            }
-        }
+        int outH = (input.getHeight() - kernelSize + 2 * padding) / stride + 1;
+        int outW = (input.getWidth() - kernelSize + 2 * padding) / stride + 1;
 
+        // 各引擎都会覆盖写满输出，复用的缓冲区无需清零
+        Tensor output = Tensor.reuse(outputBuffer, input.getBatch(), outChannels, outH, outW);
+        engine.forward(this, input, output);
         return output;
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput, double learningRate) {
-        int inH = input.getHeight();
-        int inW = input.getWidth();
-        int outH = gradOutput.getHeight();
-        int outW = gradOutput.getWidth();
-
-        float[][][] inData = input.getData();
-        float[][][] gradOut = gradOutput.getData();
-
-        float[][][] gradInput = new float[inChannels][inH][inW];
-
-        // 初始化梯度累积器
-        gradWeights = new float[outChannels][inChannels][kernelSize][kernelSize];
-        gradBiases = new float[outChannels];
-
-        // 计算梯度 w.r.t 权重, 输入, 偏置
-        for (int oc = 0; oc < outChannels; oc++) {
-            for (int oh = 0; oh < outH; oh++) {
-                for (int ow = 0; ow < outW; ow++) {
-                    float grad = gradOut[oc][oh][ow];
-                    gradBiases[oc] += grad;
-                    for (int ic = 0; ic < inChannels; ic++) {
-                        for (int kh = 0; kh < kernelSize; kh++) {
-                            for (int kw = 0; kw < kernelSize; kw++) {
-                                int ih = oh * stride + kh - padding;
-                                int iw = ow * stride + kw - padding;
-                                if (ih >= 0 && ih < inH && iw >= 0 && iw < inW) {
-                                    gradWeights[oc][ic][kh][kw] += inData[ic][ih][iw] * grad;
-                                    gradInput[ic][ih][iw] += weights[oc][ic][kh][kw] * grad;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
+    public Tensor infer(Tensor input, Tensor output) {
+        engine.forward(this, input, output);
+        return output;
+    }
 
-        // 更新权重和偏置
-        for (int oc = 0; oc < outChannels; oc++) {
-            biases[oc] -= learningRate * gradBiases[oc];
-            for (int ic = 0; ic < inChannels; ic++) {
-                for (int kh = 0; kh < kernelSize; kh++) {
-                    for (int kw = 0; kw < kernelSize; kw++) {
-                        weights[oc][ic][kh][kw] -= learningRate * gradWeights[oc][ic][kh][kw];
-                    }
-                }
-            }
+    @Override
+    public Tensor backward(Tensor gradOutput) {
+        // 部分引擎以累加方式写入 dX（col2im），复用前先清零
+        Tensor gradInput = Tensor.reuse(gradInputBuffer, input.getBatch(), inChannels, input.getHeight(), input.getWidth());
+        gradInput.fill(0);
+        engine.backward(this, input, gradOutput, gradInput);
+        return gradInput;
+    }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        int outH = (inputShape[2] - kernelSize + 2 * padding) / stride + 1;
+        int outW = (inputShape[3] - kernelSize + 2 * padding) / stride + 1;
+        return new int[]{inputShape[0], outChannels, outH, outW};
+    }
+
+    @Override
+    public void bindBuffers(Tensor output, Tensor gradInput) {
+        this.outputBuffer = output;
+        this.gradInputBuffer = gradInput;
+    }
+
+    @Override
+    public void update(double learningRate) {
+        if (gradWeights == null) return;   // 还没有做过反向
+        // 更新权重和偏置，并清零累加器
+        VectorOps ops = VectorOps.get();
+        float lr = (float) learningRate;
+        ops.axpy(-lr, gradBiases, 0, biases, 0, outChannels);
+        ops.axpy(-lr, gradWeights, 0, weights, 0, weights.length);
+        Arrays.fill(gradWeights, 0);
+        Arrays.fill(gradBiases, 0);
+        weightsVersion++;
+    }
+
+    @Override
+    public float[][] getParameters() {
+        return new float[][]{weights, biases};
+    }
+
+    @Override
+    public float[][] getGradients() {
+        ensureGradients();
+        return new float[][]{gradWeights, gradBiases};
+    }
+
+    @Override
+    public int[][] getParameterShapes() {
+        return new int[][]{{outChannels, inChannels, kernelSize, kernelSize}, {outChannels}};
+    }
+
+    @Override
+    public void setParameters(float[][] parameters) {
+        if (parameters.length != 2 || parameters[0].length != weights.length || parameters[1].length != biases.length) {
+            throw new IllegalArgumentException("参数形状不匹配");
         }
+        weights = parameters[0];
+        biases = parameters[1];
+        markWeightsChanged();
+    }
+
+    /**
+     * 在 update 之外直接改写了 weights 数组后调用，使引擎缓存的变换核失效
+     */
+    @Override
+    public void markWeightsChanged() {
+        weightsVersion++;
+    }
+
+    public long getWeightsVersion() {
+        return weightsVersion;
+    }
+
+    public ConvEngine getEngine() {
+        return engine;
+    }
+
+    public void setEngine(ConvEngine engine) {
+        this.engine = engine;
+    }
+
+    public int getInChannels() {
+        return inChannels;
+    }
+
+    public int getOutChannels() {
+        return outChannels;
+    }
+
+    public int getKernelSize() {
+        return kernelSize;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+
+    public float[] getWeights() {
+        return weights;
+    }
+
+    public float[] getBiases() {
+        return biases;
+    }
+
+    public float[] getGradWeights() {
+        ensureGradients();
+        return gradWeights;
+    }
+
+    public float[] getGradBiases() {
+        ensureGradients();
+        return gradBiases;
+    }
 
-        return new Tensor(gradInput);
+    private void ensureGradients() {
+        if (gradWeights == null) {
+            gradWeights = new float[weights.length];
+            gradBiases = new float[outChannels];
+        }
     }
 }
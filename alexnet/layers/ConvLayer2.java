@@ -52,26 +52,28 @@ public class ConvLayer2 implements Layer{
         int oW = (iW - kernelSize + 2 * padding) / stride + 1;
 
 
-        Tensor output = new Tensor(outChannels, oH, oW);
-        float[][][] inData = input.getData();
-
-
-        for(int oc = 0; oc < inChannels; oc++){
-            for(int oh = 0; oh < oH; oh++){
-                for(int ow = 0; ow < oW; ow++){
-                    float sum = biases[oc];
-                    for(int ic = 0; ic < iH; ic++){
-                        for(int kh = 0; kh < kernelSize; kh++){
-                            for (int kw = 0; kw < kernelSize; kw++){
-                                int ih = oh * stride + kh - padding;
-                                int iw = ow * stride + kw - padding;
-                                if (ih >= 0 && iw >= 0 && ih < iH && iw < iW) {
-                                    sum += weights[oc][ic][kh][kw] * inData[ic][ih][iw];
+        Tensor output = new Tensor(input.getBatch(), outChannels, oH, oW);
+
+        for (int n = 0; n < input.getBatch(); n++) {
+            float[][][] inData = input.getData(n);
+
+            for(int oc = 0; oc < inChannels; oc++){
+                for(int oh = 0; oh < oH; oh++){
+                    for(int ow = 0; ow < oW; ow++){
+                        float sum = biases[oc];
+                        for(int ic = 0; ic < iH; ic++){
+                            for(int kh = 0; kh < kernelSize; kh++){
+                                for (int kw = 0; kw < kernelSize; kw++){
+                                    int ih = oh * stride + kh - padding;
+                                    int iw = ow * stride + kw - padding;
+                                    if (ih >= 0 && iw >= 0 && ih < iH && iw < iW) {
+                                        sum += weights[oc][ic][kh][kw] * inData[ic][ih][iw];
+                                    }
                                 }
                             }
                         }
+                        output.set(n, oc, oh, ow, sum);
                     }
-                    output.set(oc, oh, ow, sum);
                 }
             }
         }
@@ -79,42 +81,60 @@ public class ConvLayer2 implements Layer{
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput, double learningRate){
+    public Tensor backward(Tensor gradOutput){
         int inH = input.getHeight();
         int inW = input.getWidth();
         int outH = gradOutput.getHeight();
         int outW = gradOutput.getWidth();
 
-        float[][][] inData = input.getData();
-        float[][][] gradOut = gradOutput.getData();
+        Tensor gradInputTensor = new Tensor(input.getBatch(), inChannels, inH, inW);
 
-        float[][][] gradInput = new float[inChannels][inH][inW];
-
-        // 初始化梯度累积器
-        gradWeights = new float[outChannels][inChannels][kernelSize][kernelSize];
-        gradBiases = new float[outChannels];
+        // 初始化梯度累积器，在 batch 内累加
+        if (gradWeights == null) {
+            gradWeights = new float[outChannels][inChannels][kernelSize][kernelSize];
+            gradBiases = new float[outChannels];
+        }
 
-        // 计算梯度 w.r.t 权重, 输入, 偏置
-        for (int oc = 0; oc < outChannels; oc++) {
-            for (int oh = 0; oh < outH; oh++) {
-                for (int ow = 0; ow < outW; ow++) {
-                    float grad = gradOut[oc][oh][ow];
-                    gradBiases[oc] += grad;
-                    for (int ic = 0; ic < inChannels; ic++) {
-                        for (int kh = 0; kh < kernelSize; kh++) {
-                            for (int kw = 0; kw < kernelSize; kw++) {
-                                int ih = oh * stride + kh - padding;
-                                int iw = ow * stride + kw - padding;
-                                if (ih >= 0 && ih < inH && iw >= 0 && iw < inW) {
-                                    gradWeights[oc][ic][kh][kw] += inData[ic][ih][iw] * grad;
-                                    gradInput[ic][ih][iw] += weights[oc][ic][kh][kw] * grad;
+        for (int n = 0; n < input.getBatch(); n++) {
+            float[][][] inData = input.getData(n);
+            float[][][] gradOut = gradOutput.getData(n);
+            float[][][] gradInput = new float[inChannels][inH][inW];
+
+            // 计算梯度 w.r.t 权重, 输入, 偏置
+            for (int oc = 0; oc < outChannels; oc++) {
+                for (int oh = 0; oh < outH; oh++) {
+                    for (int ow = 0; ow < outW; ow++) {
+                        float grad = gradOut[oc][oh][ow];
+                        gradBiases[oc] += grad;
+                        for (int ic = 0; ic < inChannels; ic++) {
+                            for (int kh = 0; kh < kernelSize; kh++) {
+                                for (int kw = 0; kw < kernelSize; kw++) {
+                                    int ih = oh * stride + kh - padding;
+                                    int iw = ow * stride + kw - padding;
+                                    if (ih >= 0 && ih < inH && iw >= 0 && iw < inW) {
+                                        gradWeights[oc][ic][kh][kw] += inData[ic][ih][iw] * grad;
+                                        gradInput[ic][ih][iw] += weights[oc][ic][kh][kw] * grad;
+                                    }
                                 }
                             }
                         }
                     }
                 }
             }
+            for (int ic = 0; ic < inChannels; ic++) {
+                for (int ih = 0; ih < inH; ih++) {
+                    for (int iw = 0; iw < inW; iw++) {
+                        gradInputTensor.set(n, ic, ih, iw, gradInput[ic][ih][iw]);
+                    }
+                }
+            }
         }
+        return gradInputTensor;
+    }
+
+    @Override
+    public void update(double learningRate){
+        if (gradWeights == null) return;
         for (int oc = 0; oc < outChannels; oc++) {
             biases[oc] -= learningRate * gradBiases[oc];
             for (int ic = 0; ic < inChannels; ic++) {
@@ -125,6 +145,14 @@ public class ConvLayer2 implements Layer{
                 }
             }
         }
-        return new Tensor(gradInput);
+        gradWeights = null;
+        gradBiases = null;
+    }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        int oH = (inputShape[2] - kernelSize + 2 * padding) / stride + 1;
+        int oW = (inputShape[3] - kernelSize + 2 * padding) / stride + 1;
+        return new int[]{inputShape[0], outChannels, oH, oW};
     }
 }
@@ -0,0 +1,118 @@
+package alexnet.layers;
+
+import alexnet.core.Tensor;
+
+/**
+ * 直接卷积：按输出像素逐个累加卷积窗口，作为其它实现的数值基准
+ */
+public class DirectConvEngine implements ConvEngine {
+
+    @Override
+    public void forward(ConvLayer layer, Tensor input, Tensor output) {
+        int inChannels = layer.getInChannels();
+        int outChannels = layer.getOutChannels();
+        int kernelSize = layer.getKernelSize();
+        int stride = layer.getStride();
+        int padding = layer.getPadding();
+        float[] weights = layer.getWeights();
+        float[] biases = layer.getBiases();
+
+        int batch = input.getBatch();
+        int inH = input.getHeight();
+        int inW = input.getWidth();
+        int outH = output.getHeight();
+        int outW = output.getWidth();
+
+        float[] in = input.getBuffer();
+        float[] out = output.getBuffer();
+        int inPlane = inH * inW;
+        int kArea = kernelSize * kernelSize;
+
+        for (int n = 0; n < batch; n++) {
+            int inBase = input.index(n, 0, 0, 0);
+            int o = output.index(n, 0, 0, 0);
+            for (int oc = 0; oc < outChannels; oc++) {
+                int wBase = oc * inChannels * kArea;
+                for (int oh = 0; oh < outH; oh++) {
+                    for (int ow = 0; ow < outW; ow++) {
+                        float sum = biases[oc];
+                        for (int ic = 0; ic < inChannels; ic++) {
+                            int inC = inBase + ic * inPlane;
+                            int wC = wBase + ic * kArea;
+                            for (int kh = 0; kh < kernelSize; kh++) {
+                                int ih = oh * stride + kh - padding;
+                                if (ih < 0 || ih >= inH) continue;
+                                int inRow = inC + ih * inW;
+                                int wRow = wC + kh * kernelSize;
+                                for (int kw = 0; kw < kernelSize; kw++) {
+                                    int iw = ow * stride + kw - padding;
+                                    if (iw >= 0 && iw < inW) {
+                                        sum += in[inRow + iw] * weights[wRow + kw];
+                                    }
+                                }
+                            }
+                        }
+                        out[o++] = sum;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void backward(ConvLayer layer, Tensor input, Tensor gradOutput, Tensor gradInputTensor) {
+        int inChannels = layer.getInChannels();
+        int outChannels = layer.getOutChannels();
+        int kernelSize = layer.getKernelSize();
+        int stride = layer.getStride();
+        int padding = layer.getPadding();
+        float[] weights = layer.getWeights();
+        float[] gradWeights = layer.getGradWeights();
+        float[] gradBiases = layer.getGradBiases();
+
+        int batch = input.getBatch();
+        int inH = input.getHeight();
+        int inW = input.getWidth();
+        int outH = gradOutput.getHeight();
+        int outW = gradOutput.getWidth();
+
+        float[] in = input.getBuffer();
+        float[] gradOut = gradOutput.getBuffer();
+        float[] gradInput = gradInputTensor.getBuffer();
+        int inPlane = inH * inW;
+        int kArea = kernelSize * kernelSize;
+
+        // 计算梯度 w.r.t 权重, 输入, 偏置；权重与偏置梯度在 batch 内累加
+        for (int n = 0; n < batch; n++) {
+            int inBase = input.index(n, 0, 0, 0);
+            int gInBase = gradInputTensor.index(n, 0, 0, 0);
+            for (int oc = 0; oc < outChannels; oc++) {
+                int wBase = oc * inChannels * kArea;
+                int gBase = gradOutput.index(n, oc, 0, 0);
+                for (int oh = 0; oh < outH; oh++) {
+                    for (int ow = 0; ow < outW; ow++) {
+                        float grad = gradOut[gBase + oh * outW + ow];
+                        gradBiases[oc] += grad;
+                        for (int ic = 0; ic < inChannels; ic++) {
+                            int inC = ic * inPlane;
+                            int wC = wBase + ic * kArea;
+                            for (int kh = 0; kh < kernelSize; kh++) {
+                                int ih = oh * stride + kh - padding;
+                                if (ih < 0 || ih >= inH) continue;
+                                int inRow = inC + ih * inW;
+                                int wRow = wC + kh * kernelSize;
+                                for (int kw = 0; kw < kernelSize; kw++) {
+                                    int iw = ow * stride + kw - padding;
+                                    if (iw >= 0 && iw < inW) {
+                                        gradWeights[wRow + kw] += in[inBase + inRow + iw] * grad;
+                                        gradInput[gInBase + inRow + iw] += weights[wRow + kw] * grad;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
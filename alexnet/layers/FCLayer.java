@@ -1,89 +1,172 @@
 package alexnet.layers;
 
 import alexnet.core.Tensor;
-import alexnet.network.Layer;
+import alexnet.core.VectorOps;
+import alexnet.network.ParameterLayer;
 
+import java.util.Arrays;
 import java.util.Random;
 
-public class FCLayer implements Layer {
+public class FCLayer implements ParameterLayer {
     private int inputSize;
     private int outputSize;
 
-    private float[][] weights; // [outputSize][inputSize]
+    private float[] weights;   // [outputSize][inputSize] 平铺，行优先
     private float[] biases;    // [outputSize]
 
-    private float[] inputCache; // 缓存用于反向传播
+    private Tensor inputCache; // 缓存用于反向传播
+    private float[] gradWeights; // 在整个 mini-batch 上累加，update 后清零；第一次反向时才分配
+    private float[] gradBiases;
+
+    private Tensor outputBuffer;     // 由 TensorArena 绑定，每次迭代复用
+    private Tensor gradInputBuffer;
 
     public FCLayer(int inputSize, int outputSize) {
+        this(inputSize, outputSize, true);
+    }
+
+    /**
+     * @param randomInit 为 false 时权重保持全零，用于随后从 checkpoint 加载、省掉随机初始化
+     */
+    public FCLayer(int inputSize, int outputSize, boolean randomInit) {
         this.inputSize = inputSize;
         this.outputSize = outputSize;
-        this.weights = new float[outputSize][inputSize];
+        this.weights = new float[outputSize * inputSize];
         this.biases = new float[outputSize];
 
-        // Xavier 初始化
-        Random rand = new Random();
-        float limit = (float) Math.sqrt(6.0 / (inputSize + outputSize));
-        for (int o = 0; o < outputSize; o++) {
-            for (int i = 0; i < inputSize; i++) {
-                weights[o][i] = (rand.nextFloat() * 2 - 1) * limit;
+        if (randomInit) {
+            // Xavier 初始化
+            Random rand = new Random();
+            float limit = (float) Math.sqrt(6.0 / (inputSize + outputSize));
+            for (int o = 0; o < outputSize; o++) {
+                int row = o * inputSize;
+                for (int i = 0; i < inputSize; i++) {
+                    weights[row + i] = (rand.nextFloat() * 2 - 1) * limit;
+                }
+                biases[o] = 0;
             }
-            biases[o] = 0;
         }
     }
 
     @Override
     public Tensor forward(Tensor input) {
-        // 输入应为 [1, 1, inputSize] 扁平张量
-        float[] flatInput = flatten(input);
-        this.inputCache = flatInput;
+        // 输入为 [N][C][H][W]，每个样本按 C*H*W 连续存放，直接当作长度为 inputSize 的行向量读取
+        if (input.sampleSize() != inputSize) {
+            throw new IllegalArgumentException("FC 输入维度不匹配: " + input.sampleSize() + " != " + inputSize);
+        }
+        this.inputCache = input;
+        Tensor output = Tensor.reuse(outputBuffer, input.getBatch(), 1, 1, outputSize);
+        multiply(input, output);
+        return output; // shape: [N][1][1][outputSize]
+    }
 
-        float[][][] outputData = new float[1][1][outputSize];
+    @Override
+    public Tensor infer(Tensor input, Tensor output) {
+        if (input.sampleSize() != inputSize) {
+            throw new IllegalArgumentException("FC 输入维度不匹配: " + input.sampleSize() + " != " + inputSize);
+        }
+        multiply(input, output);
+        return output;
+    }
 
+    private void multiply(Tensor input, Tensor output) {
+        int batch = input.getBatch();
+        float[] in = input.getBuffer();
+        int inBase = input.getOffset();
+        float[] out = output.getBuffer();
+        int outBase = output.getOffset();
+        VectorOps ops = VectorOps.get();
+
+        // Y[N][out] = X[N][in] * W^T + b：外层按权重行遍历，每行权重只读一遍即服务整个 batch
         for (int o = 0; o < outputSize; o++) {
-            float sum = biases[o];
-            for (int i = 0; i < inputSize; i++) {
-                sum += weights[o][i] * flatInput[i];
+            int row = o * inputSize;
+            for (int n = 0; n < batch; n++) {
+                out[outBase + n * outputSize + o] = biases[o] + ops.dot(weights, row, in, inBase + n * inputSize, inputSize);
             }
-            outputData[0][0][o] = sum;
         }
-
-        return new Tensor(outputData); // shape: [1][1][outputSize]
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput, double learningRate) {
-        float[] gradOut = gradOutput.getData()[0][0]; // [outputSize]
-        float[] gradInput = new float[inputSize];     // [inputSize]
-
-        // 计算梯度 & 更新权重
+    public Tensor backward(Tensor gradOutput) {
+        int batch = inputCache.getBatch();
+        float[] gradOut = gradOutput.getBuffer(); // [N][outputSize]
+        int gBase = gradOutput.getOffset();
+        float[] in = inputCache.getBuffer();
+        int inBase = inputCache.getOffset();
+        ensureGradients();
+
+        Tensor gradInputTensor = Tensor.reuse(gradInputBuffer, batch, 1, 1, inputSize);
+        gradInputTensor.fill(0);  // 下面以 axpy 累加写入
+        float[] gradInput = gradInputTensor.getBuffer(); // [N][inputSize]
+        int gInBase = gradInputTensor.getOffset();
+        VectorOps ops = VectorOps.get();
+
+        // dX = G * W，dW += G^T * X：同样按权重行遍历，每行 W 与 dW 在一次 batch 中只访问一遍
         for (int o = 0; o < outputSize; o++) {
-            for (int i = 0; i < inputSize; i++) {
-                gradInput[i] += weights[o][i] * gradOut[o]; // 输入误差
-                weights[o][i] -= learningRate * gradOut[o] * inputCache[i];
+            int row = o * inputSize;
+            for (int n = 0; n < batch; n++) {
+                float g = gradOut[gBase + n * outputSize + o];
+                if (g == 0) continue;
+                ops.axpy(g, weights, row, gradInput, gInBase + n * inputSize, inputSize); // 输入误差
+                ops.axpy(g, in, inBase + n * inputSize, gradWeights, row, inputSize);
+                gradBiases[o] += g;
             }
-            biases[o] -= learningRate * gradOut[o];
         }
 
-        float[][][] gradInputData = new float[1][1][inputSize];
-        gradInputData[0][0] = gradInput;
-        return new Tensor(gradInputData);
+        return gradInputTensor;
     }
 
-    private float[] flatten(Tensor input) {
-        float[][][] data = input.getData();
-        int c = input.getChannels();
-        int h = input.getHeight();
-        int w = input.getWidth();
-
-        float[] flat = new float[c * h * w];
-        int index = 0;
-        for (int ch = 0; ch < c; ch++) {
-            for (int i = 0; i < h; i++) {
-                for (int j = 0; j < w; j++) {
-                    flat[index++] = data[ch][i][j];
-                }
-            }
+    @Override
+    public void update(double learningRate) {
+        if (gradWeights == null) return;   // 还没有做过反向
+        VectorOps ops = VectorOps.get();
+        float lr = (float) learningRate;
+        ops.axpy(-lr, gradWeights, 0, weights, 0, weights.length);
+        ops.axpy(-lr, gradBiases, 0, biases, 0, outputSize);
+        Arrays.fill(gradWeights, 0);
+        Arrays.fill(gradBiases, 0);
+    }
+
+    @Override
+    public float[][] getParameters() {
+        return new float[][]{weights, biases};
+    }
+
+    @Override
+    public float[][] getGradients() {
+        ensureGradients();
+        return new float[][]{gradWeights, gradBiases};
+    }
+
+    @Override
+    public int[][] getParameterShapes() {
+        return new int[][]{{outputSize, inputSize}, {outputSize}};
+    }
+
+    @Override
+    public void setParameters(float[][] parameters) {
+        if (parameters.length != 2 || parameters[0].length != weights.length || parameters[1].length != biases.length) {
+            throw new IllegalArgumentException("参数形状不匹配");
+        }
+        weights = parameters[0];
+        biases = parameters[1];
+    }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        return new int[]{inputShape[0], 1, 1, outputSize};
+    }
+
+    @Override
+    public void bindBuffers(Tensor output, Tensor gradInput) {
+        this.outputBuffer = output;
+        this.gradInputBuffer = gradInput;
+    }
+
+    private void ensureGradients() {
+        if (gradWeights == null) {
+            gradWeights = new float[weights.length];
+            gradBiases = new float[outputSize];
         }
-        return flat;
     }
 }
@@ -0,0 +1,202 @@
+package alexnet.layers;
+
+import alexnet.core.FFT;
+import alexnet.core.Tensor;
+
+import java.util.Arrays;
+
+/**
+ * 基于 FFT 的卷积，面向 conv1 这类大卷积核（11x11）。
+ * 把补零后的输入与卷积核都变换到 F×F 的频域（F 为不小于 H+2p 的 2 的幂），
+ * 互相关即为 IFFT(X · conj(W))；对每个输出通道先在频域里把所有输入通道累加起来，只做一次逆变换。
+ * 输入是实数，频谱只保存 F×(F/2+1) 的一半。stride 通过只对需要的行做逆变换、只取需要的列来实现下采样。
+ * <p>
+ * 卷积核频谱按层的 weightsVersion 缓存，权重更新后重新计算。反向传播交给 {@link Im2colConvEngine}。
+ */
+public class FftConvEngine implements ConvEngine {
+    private final Im2colConvEngine fallback = new Im2colConvEngine();
+
+    private FFT fft;
+    private int fftSize;
+
+    private float[] filterRe;           // W[outC][inC][F][F/2+1]
+    private float[] filterIm;
+    private long filtersVersion = -1;
+
+    private float[] inputRe;            // X[inC][F][F/2+1]
+    private float[] inputIm;
+    private float[] accRe;              // Σ_ic X·conj(W)，[F][F/2+1]
+    private float[] accIm;
+    private float[] rowRe;
+    private float[] rowIm;
+
+    @Override
+    public void forward(ConvLayer layer, Tensor input, Tensor output) {
+        int inChannels = layer.getInChannels();
+        int outChannels = layer.getOutChannels();
+        int padding = layer.getPadding();
+        int stride = layer.getStride();
+        int inH = input.getHeight();
+        int inW = input.getWidth();
+        int outH = output.getHeight();
+        int outW = output.getWidth();
+
+        int size = FFT.nextPowerOfTwo(Math.max(inH, inW) + 2 * padding);
+        prepare(layer, size);
+        int half = size / 2 + 1;
+        int plane = size * half;
+        inputRe = ensure(inputRe, inChannels * plane);
+        inputIm = ensure(inputIm, inChannels * plane);
+        float scale = 1f / ((float) size * size);
+
+        float[] in = input.getBuffer();
+        float[] out = output.getBuffer();
+        float[] biases = layer.getBiases();
+
+        for (int n = 0; n < input.getBatch(); n++) {
+            for (int ic = 0; ic < inChannels; ic++) {
+                forwardReal2d(in, input.index(n, ic, 0, 0), inH, inW, padding,
+                        inputRe, inputIm, ic * plane);
+            }
+
+            for (int oc = 0; oc < outChannels; oc++) {
+                Arrays.fill(accRe, 0, plane, 0f);
+                Arrays.fill(accIm, 0, plane, 0f);
+                for (int ic = 0; ic < inChannels; ic++) {
+                    int x = ic * plane;
+                    int w = (oc * inChannels + ic) * plane;
+                    for (int i = 0; i < plane; i++) {
+                        float xr = inputRe[x + i], xi = inputIm[x + i];
+                        float wr = filterRe[w + i], wi = filterIm[w + i];
+                        accRe[i] += xr * wr + xi * wi;
+                        accIm[i] += xi * wr - xr * wi;
+                    }
+                }
+
+                int o = output.index(n, oc, 0, 0);
+                inverseSubsampled(outH, outW, stride, scale, biases[oc], out, o);
+            }
+        }
+    }
+
+    @Override
+    public void backward(ConvLayer layer, Tensor input, Tensor gradOutput, Tensor gradInput) {
+        fallback.backward(layer, input, gradOutput, gradInput);
+    }
+
+    /**
+     * 按 FFT 尺寸准备工作区，必要时重新计算卷积核频谱
+     */
+    private void prepare(ConvLayer layer, int size) {
+        int half = size / 2 + 1;
+        int plane = size * half;
+        if (fft == null || fftSize != size) {
+            fft = new FFT(size);
+            fftSize = size;
+            filtersVersion = -1;
+            accRe = new float[plane];
+            accIm = new float[plane];
+            rowRe = new float[size];
+            rowIm = new float[size];
+        }
+        if (filtersVersion == layer.getWeightsVersion() && filterRe != null) {
+            return;
+        }
+
+        int inChannels = layer.getInChannels();
+        int outChannels = layer.getOutChannels();
+        int k = layer.getKernelSize();
+        float[] weights = layer.getWeights();
+        int count = outChannels * inChannels;
+        filterRe = ensure(filterRe, count * plane);
+        filterIm = ensure(filterIm, count * plane);
+        for (int f = 0; f < count; f++) {
+            forwardReal2d(weights, f * k * k, k, k, 0, filterRe, filterIm, f * plane);
+        }
+        filtersVersion = layer.getWeightsVersion();
+    }
+
+    /**
+     * 把 src 中一个 h×w 的实数平面放到 F×F 零矩阵的 (pad, pad) 处，做二维 FFT，
+     * 结果的前 F/2+1 列写入 dstRe/dstIm[dstOff ...]，按 [F][F/2+1] 存放
+     */
+    private void forwardReal2d(float[] src, int srcOff, int h, int w, int pad,
+                               float[] dstRe, float[] dstIm, int dstOff) {
+        int size = fftSize;
+        int half = size / 2 + 1;
+
+        // 行变换：只有 pad..pad+h 行非零，其余行的频谱全为 0
+        for (int r = 0; r < size; r++) {
+            int y = r - pad;
+            int dst = dstOff + r * half;
+            if (y < 0 || y >= h) {
+                Arrays.fill(dstRe, dst, dst + half, 0f);
+                Arrays.fill(dstIm, dst, dst + half, 0f);
+                continue;
+            }
+            Arrays.fill(rowRe, 0f);
+            Arrays.fill(rowIm, 0f);
+            System.arraycopy(src, srcOff + y * w, rowRe, pad, w);
+            fft.transform(rowRe, rowIm, false);
+            System.arraycopy(rowRe, 0, dstRe, dst, half);
+            System.arraycopy(rowIm, 0, dstIm, dst, half);
+        }
+
+        // 列变换
+        for (int c = 0; c < half; c++) {
+            for (int r = 0; r < size; r++) {
+                rowRe[r] = dstRe[dstOff + r * half + c];
+                rowIm[r] = dstIm[dstOff + r * half + c];
+            }
+            fft.transform(rowRe, rowIm, false);
+            for (int r = 0; r < size; r++) {
+                dstRe[dstOff + r * half + c] = rowRe[r];
+                dstIm[dstOff + r * half + c] = rowIm[r];
+            }
+        }
+    }
+
+    /**
+     * 对 accRe/accIm 做二维逆变换，只计算第 oh*stride 行、第 ow*stride 列的输出
+     */
+    private void inverseSubsampled(int outH, int outW, int stride, float scale, float bias,
+                                   float[] out, int outOff) {
+        int size = fftSize;
+        int half = size / 2 + 1;
+
+        // 列逆变换（每列都要做，才能得到所需的行）
+        for (int c = 0; c < half; c++) {
+            for (int r = 0; r < size; r++) {
+                rowRe[r] = accRe[r * half + c];
+                rowIm[r] = accIm[r * half + c];
+            }
+            fft.transform(rowRe, rowIm, true);
+            for (int r = 0; r < size; r++) {
+                accRe[r * half + c] = rowRe[r];
+                accIm[r * half + c] = rowIm[r];
+            }
+        }
+
+        // 行逆变换：只做被 stride 采样到的行，利用共轭对称补全另一半频谱
+        for (int oh = 0; oh < outH; oh++) {
+            int r = oh * stride * half;
+            for (int c = 0; c < half; c++) {
+                rowRe[c] = accRe[r + c];
+                rowIm[c] = accIm[r + c];
+            }
+            for (int c = half; c < size; c++) {
+                rowRe[c] = accRe[r + size - c];
+                rowIm[c] = -accIm[r + size - c];
+            }
+            fft.transform(rowRe, rowIm, true);
+            int o = outOff + oh * outW;
+            for (int ow = 0; ow < outW; ow++) {
+                out[o + ow] = rowRe[ow * stride] * scale + bias;
+            }
+        }
+    }
+
+    private static float[] ensure(float[] buf, int size) {
+        return buf != null && buf.length >= size ? buf : new float[size];
+    }
+}
@@ -10,45 +10,32 @@ public class FlattenLayer implements Layer {
     public Tensor forward(Tensor input) {
         this.inputCache = input;
 
-        int c = input.getChannels();
-        int h = input.getHeight();
-        int w = input.getWidth();
-        float[][][] data = input.getData();
-
-        float[] flat = new float[c * h * w];
-        int idx = 0;
-        for (int ch = 0; ch < c; ch++) {
-            for (int i = 0; i < h; i++) {
-                for (int j = 0; j < w; j++) {
-                    flat[idx++] = data[ch][i][j];
-                }
-            }
-        }
-
-        float[][][] outData = new float[1][1][flat.length];
-        outData[0][0] = flat;
-
-        return new Tensor(outData);
+        // CHW 已连续存放，平铺顺序即展平顺序：[N][C][H][W] -> [N][1][1][C*H*W] 只是换一个形状的视图
+        return input.reshape(input.getBatch(), 1, 1, input.sampleSize());
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput, double learningRate) {
+    public Tensor infer(Tensor input, Tensor output) {
+        return input.reshape(input.getBatch(), 1, 1, input.sampleSize());
+    }
+
+    @Override
+    public Tensor backward(Tensor gradOutput) {
+        int n = inputCache.getBatch();
         int c = inputCache.getChannels();
         int h = inputCache.getHeight();
         int w = inputCache.getWidth();
 
-        float[] flatGrad = gradOutput.getData()[0][0];
-        float[][][] gradInput = new float[c][h][w];
+        return gradOutput.reshape(n, c, h, w);
+    }
 
-        int idx = 0;
-        for (int ch = 0; ch < c; ch++) {
-            for (int i = 0; i < h; i++) {
-                for (int j = 0; j < w; j++) {
-                    gradInput[ch][i][j] = flatGrad[idx++];
-                }
-            }
-        }
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        return new int[]{inputShape[0], 1, 1, inputShape[1] * inputShape[2] * inputShape[3]};
+    }
 
-        return new Tensor(gradInput);
+    @Override
+    public boolean returnsView() {
+        return true;
     }
 }
@@ -0,0 +1,193 @@
+package alexnet.layers;
+
+import alexnet.core.MatrixUtils;
+import alexnet.core.Tensor;
+
+import java.util.Arrays;
+
+/**
+ * im2col + 分块 GEMM 卷积。
+ * 每个样本先把输入展开成列矩阵 col[inC*k*k][outH*outW]（越界的 padding 位置直接写 0），
+ * 卷积即变为 W[outC][inC*k*k] * col；反向时 dW += dY * col^T，dCol = W^T * dY，再经 col2im 累加回输入梯度。
+ * 列矩阵工作区在多次调用间复用，因此引擎实例不能在多个层或多个线程间共享。
+ */
+public class Im2colConvEngine implements ConvEngine {
+    private float[] col;
+    private float[] gradCol;
+
+    @Override
+    public void forward(ConvLayer layer, Tensor input, Tensor output) {
+        int outChannels = layer.getOutChannels();
+        int rows = layer.getInChannels() * layer.getKernelSize() * layer.getKernelSize();
+        int cols = output.getHeight() * output.getWidth();
+        float[] weights = layer.getWeights();
+        float[] biases = layer.getBiases();
+        float[] out = output.getBuffer();
+        col = ensure(col, rows * cols);
+
+        for (int n = 0; n < input.getBatch(); n++) {
+            im2col(layer, input, n, output.getHeight(), output.getWidth(), col);
+            int o = output.index(n, 0, 0, 0);
+            for (int oc = 0; oc < outChannels; oc++) {
+                Arrays.fill(out, o + oc * cols, o + (oc + 1) * cols, biases[oc]);
+            }
+            MatrixUtils.gemm(weights, 0, col, 0, out, o, outChannels, cols, rows, true);
+        }
+    }
+
+    @Override
+    public void backward(ConvLayer layer, Tensor input, Tensor gradOutput, Tensor gradInput) {
+        backwardWeights(layer, input, gradOutput);
+        backwardInput(layer, gradOutput, gradInput);
+    }
+
+    /**
+     * 只计算并累加权重/偏置梯度：db += rowsum(dY)，dW += dY * col^T
+     */
+    void backwardWeights(ConvLayer layer, Tensor input, Tensor gradOutput) {
+        int outChannels = layer.getOutChannels();
+        int rows = layer.getInChannels() * layer.getKernelSize() * layer.getKernelSize();
+        int outH = gradOutput.getHeight();
+        int outW = gradOutput.getWidth();
+        int cols = outH * outW;
+        float[] gradWeights = layer.getGradWeights();
+        float[] gradBiases = layer.getGradBiases();
+        float[] gradOut = gradOutput.getBuffer();
+        col = ensure(col, rows * cols);
+
+        for (int n = 0; n < input.getBatch(); n++) {
+            int g = gradOutput.index(n, 0, 0, 0);
+            for (int oc = 0; oc < outChannels; oc++) {
+                float sum = 0;
+                int row = g + oc * cols;
+                for (int j = 0; j < cols; j++) {
+                    sum += gradOut[row + j];
+                }
+                gradBiases[oc] += sum;
+            }
+
+            // dW[outC][rows] += dY[outC][cols] * col[rows][cols]^T
+            im2col(layer, input, n, outH, outW, col);
+            MatrixUtils.gemmNT(gradOut, g, col, 0, gradWeights, 0, outChannels, rows, cols, true);
+        }
+    }
+
+    /**
+     * 只计算输入梯度：dCol = W^T * dY，再 col2im 累加进 gradInput
+     */
+    void backwardInput(ConvLayer layer, Tensor gradOutput, Tensor gradInput) {
+        int outChannels = layer.getOutChannels();
+        int rows = layer.getInChannels() * layer.getKernelSize() * layer.getKernelSize();
+        int outH = gradOutput.getHeight();
+        int outW = gradOutput.getWidth();
+        int cols = outH * outW;
+        float[] weights = layer.getWeights();
+        float[] gradOut = gradOutput.getBuffer();
+        gradCol = ensure(gradCol, rows * cols);
+
+        for (int n = 0; n < gradOutput.getBatch(); n++) {
+            int g = gradOutput.index(n, 0, 0, 0);
+            // dCol[rows][cols] = W[outC][rows]^T * dY[outC][cols]
+            MatrixUtils.gemmTN(weights, 0, gradOut, g, gradCol, 0, rows, cols, outChannels, false);
+            col2im(layer, gradCol, gradInput, n, outH, outW);
+        }
+    }
+
+    /**
+     * 把第 n 个样本展开为 col[(ic*k + kh)*k + kw][oh*outW + ow]
+     */
+    static void im2col(ConvLayer layer, Tensor input, int n, int outH, int outW, float[] col) {
+        im2col(layer, input, n, outH, outW, col, 0, layer.getInChannels());
+    }
+
+    /**
+     * 只展开输入通道 [icStart, icEnd) 对应的行，各通道写入 col 中互不重叠的行块
+     */
+    static void im2col(ConvLayer layer, Tensor input, int n, int outH, int outW, float[] col,
+                       int icStart, int icEnd) {
+        int k = layer.getKernelSize();
+        int stride = layer.getStride();
+        int padding = layer.getPadding();
+        int inH = input.getHeight();
+        int inW = input.getWidth();
+        float[] in = input.getBuffer();
+
+        int r = icStart * k * k;
+        for (int ic = icStart; ic < icEnd; ic++) {
+            int plane = input.index(n, ic, 0, 0);
+            for (int kh = 0; kh < k; kh++) {
+                for (int kw = 0; kw < k; kw++, r++) {
+                    // 该行中 iw = ow*stride + kw - padding 落在 [0, inW) 内的 ow 区间
+                    int owStart = Math.max(0, ceilDiv(padding - kw, stride));
+                    int owEnd = Math.min(outW, ceilDiv(inW + padding - kw, stride));
+                    int dst = r * outH * outW;
+                    for (int oh = 0; oh < outH; oh++, dst += outW) {
+                        int ih = oh * stride + kh - padding;
+                        if (ih < 0 || ih >= inH || owStart >= owEnd) {
+                            Arrays.fill(col, dst, dst + outW, 0f);
+                            continue;
+                        }
+                        Arrays.fill(col, dst, dst + owStart, 0f);
+                        Arrays.fill(col, dst + owEnd, dst + outW, 0f);
+                        int src = plane + ih * inW + owStart * stride + kw - padding;
+                        if (stride == 1) {
+                            System.arraycopy(in, src, col, dst + owStart, owEnd - owStart);
+                        } else {
+                            for (int ow = owStart; ow < owEnd; ow++, src += stride) {
+                                col[dst + ow] = in[src];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * im2col 的逆过程：把 col 中的梯度按卷积窗口位置累加回第 n 个样本的输入梯度
+     */
+    static void col2im(ConvLayer layer, float[] col, Tensor gradInput, int n, int outH, int outW) {
+        col2im(layer, col, gradInput, n, outH, outW, 0, layer.getInChannels());
+    }
+
+    /**
+     * 只把输入通道 [icStart, icEnd) 对应的行累加回输入梯度，只写这些通道的平面
+     */
+    static void col2im(ConvLayer layer, float[] col, Tensor gradInput, int n, int outH, int outW,
+                       int icStart, int icEnd) {
+        int k = layer.getKernelSize();
+        int stride = layer.getStride();
+        int padding = layer.getPadding();
+        int inH = gradInput.getHeight();
+        int inW = gradInput.getWidth();
+        float[] gradIn = gradInput.getBuffer();
+
+        int r = icStart * k * k;
+        for (int ic = icStart; ic < icEnd; ic++) {
+            int plane = gradInput.index(n, ic, 0, 0);
+            for (int kh = 0; kh < k; kh++) {
+                for (int kw = 0; kw < k; kw++, r++) {
+                    int owStart = Math.max(0, ceilDiv(padding - kw, stride));
+                    int owEnd = Math.min(outW, ceilDiv(inW + padding - kw, stride));
+                    int src = r * outH * outW;
+                    for (int oh = 0; oh < outH; oh++, src += outW) {
+                        int ih = oh * stride + kh - padding;
+                        if (ih < 0 || ih >= inH) continue;
+                        int dst = plane + ih * inW + owStart * stride + kw - padding;
+                        for (int ow = owStart; ow < owEnd; ow++, dst += stride) {
+                            gradIn[dst] += col[src + ow];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return -Math.floorDiv(-a, b);
+    }
+
+    private static float[] ensure(float[] buf, int size) {
+        return buf != null && buf.length >= size ? buf : new float[size];
+    }
+}
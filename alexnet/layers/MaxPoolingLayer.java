@@ -10,7 +10,7 @@ public class MaxPoolingLayer implements Layer {
     private int inputHeight;
     private int inputWidth;
 
-    private int[][][][] maxIndexes;
+    private int[][][][][] maxIndexes;
 
     public MaxPoolingLayer(int poolSize, int stride) {
         this.poolSize = poolSize;
@@ -18,6 +18,7 @@ public class MaxPoolingLayer implements Layer {
     }
 
     public Tensor forward(Tensor input) {
+        int batch = input.getBatch();
         int channels = input.getChannels();
         int inH = input.getHeight();
         int inW = input.getWidth();
@@ -27,57 +28,67 @@ public class MaxPoolingLayer implements Layer {
         int outH = (inH - poolSize) / stride + 1;
         int outW = (inW - poolSize) / stride + 1;
 
-        float[][][] inData = input.getData();
-        float[][][] outData = new float[channels][outH][outW];
-        maxIndexes = new int[channels][outH][outW][2];
+        Tensor output = new Tensor(batch, channels, outH, outW);
+        maxIndexes = new int[batch][channels][outH][outW][2];
 
-        for (int c = 0; c < channels; c++) {
-            for (int oH = 0; oH < outH; oH++) {
-                for (int oW = 0; oW < outW; oW++) {
-                    int maxH = -1;
-                    int maxW = -1;
-                    float maxData = Float.NEGATIVE_INFINITY;
+        for (int n = 0; n < batch; n++) {
+            float[][][] inData = input.getData(n);
+            for (int c = 0; c < channels; c++) {
+                for (int oH = 0; oH < outH; oH++) {
+                    for (int oW = 0; oW < outW; oW++) {
+                        int maxH = -1;
+                        int maxW = -1;
+                        float maxData = Float.NEGATIVE_INFINITY;
 
-                    for (int pH = 0; pH < poolSize; pH++) {
-                        for (int pW = 0; pW < poolSize; pW++) {
-                            int iH = oH * stride + pH;
-                            int iW = oW * stride + pW;
-                            if (inData[c][oH][oW] > maxData) {
-                                maxData = inData[c][iH][iW];
-                                maxH = iH;
-                                maxW = iW;
+                        for (int pH = 0; pH < poolSize; pH++) {
+                            for (int pW = 0; pW < poolSize; pW++) {
+                                int iH = oH * stride + pH;
+                                int iW = oW * stride + pW;
+                                if (inData[c][oH][oW] > maxData) {
+                                    maxData = inData[c][iH][iW];
+                                    maxH = iH;
+                                    maxW = iW;
+                                }
                             }
                         }
+                        output.set(n, c, oH, oW, maxData);
+                        maxIndexes[n][c][oH][oW][0] = maxH;
+                        maxIndexes[n][c][oH][oW][1] = maxW;
                     }
-                    outData[c][oH][oW] = maxData;
-                    maxIndexes[c][oH][oW][0] = maxH;
-                    maxIndexes[c][oH][oW][1] = maxW;
                 }
             }
         }
-        return new Tensor(outData);
+        return output;
     }
-    public Tensor backward(Tensor gradOutput, double learningRate) {
+    public Tensor backward(Tensor gradOutput) {
+        int batch = gradOutput.getBatch();
         int channels = gradOutput.getChannels();
         int outH = gradOutput.getHeight();
         int outW = gradOutput.getWidth();
 
-        float[][][] gradOutData = gradOutput.getData();
-
         // ✅ 用 forward 缓存的 input 尺寸，保证与 ReLU 输入一致
-        float[][][] gradInput = new float[channels][inputHeight][inputWidth];
+        Tensor gradInput = new Tensor(batch, channels, inputHeight, inputWidth);
 
-        for (int c = 0; c < channels; c++) {
-            for (int oh = 0; oh < outH; oh++) {
-                for (int ow = 0; ow < outW; ow++) {
-                    int ih = maxIndexes[c][oh][ow][0];
-                    int iw = maxIndexes[c][oh][ow][1];
-                    gradInput[c][ih][iw] += gradOutData[c][oh][ow];
+        for (int n = 0; n < batch; n++) {
+            for (int c = 0; c < channels; c++) {
+                for (int oh = 0; oh < outH; oh++) {
+                    for (int ow = 0; ow < outW; ow++) {
+                        int ih = maxIndexes[n][c][oh][ow][0];
+                        int iw = maxIndexes[n][c][oh][ow][1];
+                        int idx = gradInput.index(n, c, ih, iw);
+                        gradInput.getBuffer()[idx] += gradOutput.get(n, c, oh, ow);
+                    }
                 }
             }
         }
 
-        return new Tensor(gradInput);
+        return gradInput;
     }
 
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        int outH = (inputShape[2] - poolSize) / stride + 1;
+        int outW = (inputShape[3] - poolSize) / stride + 1;
+        return new int[]{inputShape[0], inputShape[1], outH, outW};
+    }
 }
@@ -0,0 +1,146 @@
+package alexnet.layers;
+
+import alexnet.core.MatrixUtils;
+import alexnet.core.Parallel;
+import alexnet.core.Tensor;
+
+import java.util.Arrays;
+
+/**
+ * 多线程 im2col 卷积，运行在 {@link Parallel} 的共享 ForkJoinPool 上。
+ * 原先 dW 与 dX 在同一个循环里散射写入 gradInput，无法安全并行；这里拆成互不冲突的几个阶段：
+ * <ul>
+ *     <li>im2col / col2im 按输入通道切分，每个任务只写自己的行块或输入平面；</li>
+ *     <li>前向与 dW 按输出通道切分，每个任务只写自己的输出行与 dW 行；</li>
+ *     <li>dX 单独一遍，按输入通道切分的收集式计算：dCol[ic 对应的行] = W^T[这些行] * dY，再写回该通道平面。</li>
+ * </ul>
+ * 不需要原子操作；每个元素的累加顺序与划分方式无关，结果与串行的 {@link Im2colConvEngine} 逐位一致。
+ */
+public class ParallelConvEngine implements ConvEngine {
+    private float[] col;
+    private float[] gradCol;
+    private float[] transposedWeights;   // W^T[inC*k*k][outC]，按 weightsVersion 缓存
+    private long transposedVersion = -1;
+
+    @Override
+    public void forward(ConvLayer layer, Tensor input, Tensor output) {
+        int outChannels = layer.getOutChannels();
+        int k = layer.getKernelSize();
+        int rows = layer.getInChannels() * k * k;
+        int outH = output.getHeight();
+        int outW = output.getWidth();
+        int cols = outH * outW;
+        float[] weights = layer.getWeights();
+        float[] biases = layer.getBiases();
+        float[] out = output.getBuffer();
+        float[] col = this.col = ensure(this.col, rows * cols);
+
+        for (int n = 0; n < input.getBatch(); n++) {
+            int sample = n;
+            Parallel.forRange(layer.getInChannels(), 1, (start, end) ->
+                    Im2colConvEngine.im2col(layer, input, sample, outH, outW, col, start, end));
+
+            int o = output.index(n, 0, 0, 0);
+            Parallel.forRange(outChannels, 4, (start, end) -> {
+                for (int oc = start; oc < end; oc++) {
+                    Arrays.fill(out, o + oc * cols, o + (oc + 1) * cols, biases[oc]);
+                }
+                MatrixUtils.gemm(weights, start * rows, col, 0, out, o + start * cols,
+                        end - start, cols, rows, true);
+            });
+        }
+    }
+
+    @Override
+    public void backward(ConvLayer layer, Tensor input, Tensor gradOutput, Tensor gradInput) {
+        backwardWeights(layer, input, gradOutput);
+        backwardInput(layer, gradOutput, gradInput);
+    }
+
+    /**
+     * dW / db 按输出通道切分：每个任务只累加自己那几行
+     */
+    private void backwardWeights(ConvLayer layer, Tensor input, Tensor gradOutput) {
+        int outChannels = layer.getOutChannels();
+        int k = layer.getKernelSize();
+        int rows = layer.getInChannels() * k * k;
+        int outH = gradOutput.getHeight();
+        int outW = gradOutput.getWidth();
+        int cols = outH * outW;
+        float[] gradWeights = layer.getGradWeights();
+        float[] gradBiases = layer.getGradBiases();
+        float[] gradOut = gradOutput.getBuffer();
+        float[] col = this.col = ensure(this.col, rows * cols);
+
+        for (int n = 0; n < input.getBatch(); n++) {
+            int sample = n;
+            Parallel.forRange(layer.getInChannels(), 1, (start, end) ->
+                    Im2colConvEngine.im2col(layer, input, sample, outH, outW, col, start, end));
+
+            int g = gradOutput.index(n, 0, 0, 0);
+            Parallel.forRange(outChannels, 4, (start, end) -> {
+                for (int oc = start; oc < end; oc++) {
+                    float sum = 0;
+                    int row = g + oc * cols;
+                    for (int j = 0; j < cols; j++) {
+                        sum += gradOut[row + j];
+                    }
+                    gradBiases[oc] += sum;
+                }
+                MatrixUtils.gemmNT(gradOut, g + start * cols, col, 0, gradWeights, start * rows,
+                        end - start, rows, cols, true);
+            });
+        }
+    }
+
+    /**
+     * dX 按输入通道切分：每个任务用 W^T 中属于自己通道的行收集 dY 的贡献，只写自己的输入平面
+     */
+    private void backwardInput(ConvLayer layer, Tensor gradOutput, Tensor gradInput) {
+        int outChannels = layer.getOutChannels();
+        int k = layer.getKernelSize();
+        int kArea = k * k;
+        int rows = layer.getInChannels() * kArea;
+        int outH = gradOutput.getHeight();
+        int outW = gradOutput.getWidth();
+        int cols = outH * outW;
+        float[] gradOut = gradOutput.getBuffer();
+        float[] gradCol = this.gradCol = ensure(this.gradCol, rows * cols);
+        float[] wt = transposedWeights(layer);
+
+        for (int n = 0; n < gradOutput.getBatch(); n++) {
+            int sample = n;
+            int g = gradOutput.index(n, 0, 0, 0);
+            Parallel.forRange(layer.getInChannels(), 1, (start, end) -> {
+                // dCol[该通道的 k*k 行][cols] = W^T[这些行][outC] * dY[outC][cols]
+                MatrixUtils.gemm(wt, start * kArea * outChannels, gradOut, g, gradCol, start * kArea * cols,
+                        (end - start) * kArea, cols, outChannels, false);
+                Im2colConvEngine.col2im(layer, gradCol, gradInput, sample, outH, outW, start, end);
+            });
+        }
+    }
+
+    private float[] transposedWeights(ConvLayer layer) {
+        if (transposedWeights != null && transposedVersion == layer.getWeightsVersion()) {
+            return transposedWeights;
+        }
+        int outChannels = layer.getOutChannels();
+        int rows = layer.getInChannels() * layer.getKernelSize() * layer.getKernelSize();
+        float[] weights = layer.getWeights();
+        float[] wt = ensure(transposedWeights, rows * outChannels);
+        Parallel.forRange(rows, 64, (start, end) -> {
+            for (int r = start; r < end; r++) {
+                for (int oc = 0; oc < outChannels; oc++) {
+                    wt[r * outChannels + oc] = weights[oc * rows + r];
+                }
+            }
+        });
+        transposedWeights = wt;
+        transposedVersion = layer.getWeightsVersion();
+        return wt;
+    }
+
+    private static float[] ensure(float[] buf, int size) {
+        return buf != null && buf.length >= size ? buf : new float[size];
+    }
+}
@@ -9,8 +9,11 @@ public class PoolingLayer implements Layer {
     private int inputHeight;
     private int inputWidth;
 
-    // 缓存最大位置用于反向传播
-    private int[][][][] maxIndexes;
+    // 缓存最大位置用于反向传播：[N][C][outH][outW] 平铺，值为输入平面内下标 ih * inW + iw
+    private int[] maxIndexes;
+
+    private Tensor outputBuffer;    // 由 TensorArena 绑定，每次迭代复用
+    private Tensor gradInputBuffer;
 
     public PoolingLayer(int poolSize, int stride) {
         this.poolSize = poolSize;
@@ -19,6 +22,7 @@ public class PoolingLayer implements Layer {
 
     @Override
     public Tensor forward(Tensor input) {
+        int batch = input.getBatch();
         int channels = input.getChannels();
         int inH = input.getHeight();
         int inW = input.getWidth();
@@ -28,64 +32,104 @@ public class PoolingLayer implements Layer {
         int outH = (inH - poolSize) / stride + 1;
         int outW = (inW - poolSize) / stride + 1;
 
-        float[][][] inData = input.getData();
-        float[][][] outData = new float[channels][outH][outW];
-        maxIndexes = new int[channels][outH][outW][2]; // 保存最大值的位置 [h][w]
+        Tensor output = Tensor.reuse(outputBuffer, batch, channels, outH, outW);
+        if (maxIndexes == null || maxIndexes.length != output.size()) {
+            maxIndexes = new int[output.size()];
+        }
+        pool(input, output, maxIndexes);
+        return output;
+    }
 
-        for (int c = 0; c < channels; c++) {
+    @Override
+    public Tensor infer(Tensor input, Tensor output) {
+        pool(input, output, null);
+        return output;
+    }
+
+    /**
+     * 最大池化 input -> output；maxIndexes 不为 null 时记录每个输出取自输入平面内的哪个位置
+     */
+    private void pool(Tensor input, Tensor output, int[] maxIndexes) {
+        int inH = input.getHeight();
+        int inW = input.getWidth();
+        int outH = output.getHeight();
+        int outW = output.getWidth();
+        float[] in = input.getBuffer();
+        int inBase = input.getOffset();
+        float[] out = output.getBuffer();
+        int outBase = output.getOffset();
+
+        // NCHW 连续存放，N*C 个平面可以一起遍历
+        int planes = input.getBatch() * input.getChannels();
+        int o = 0;
+        for (int c = 0; c < planes; c++) {
+            int plane = inBase + c * inH * inW;
             for (int oh = 0; oh < outH; oh++) {
                 for (int ow = 0; ow < outW; ow++) {
                     float maxVal = Float.NEGATIVE_INFINITY;
-                    int maxH = -1, maxW = -1;
+                    int maxPos = -1;
 
                     for (int ph = 0; ph < poolSize; ph++) {
+                        int ih = oh * stride + ph;
+                        if (ih >= inH) break;
+                        int row = ih * inW;
                         for (int pw = 0; pw < poolSize; pw++) {
-                            int ih = oh * stride + ph;
-                            int iw = oh * stride + pw;
-
-                            if (ih < inH && iw < inW) {
-                                float val = inData[c][ih][iw];
-                                if (val > maxVal) {
-                                    maxVal = val;
-                                    maxH = ih;
-                                    maxW = iw;
-                                }
+                            int iw = ow * stride + pw;
+                            if (iw >= inW) break;
+                            float val = in[plane + row + iw];
+                            if (val > maxVal) {
+                                maxVal = val;
+                                maxPos = row + iw;
                             }
                         }
                     }
 
-                    outData[c][oh][ow] = maxVal;
-                    maxIndexes[c][oh][ow][0] = maxH;
-                    maxIndexes[c][oh][ow][1] = maxW;
+                    out[outBase + o] = maxVal;
+                    if (maxIndexes != null) maxIndexes[o] = maxPos;
+                    o++;
                 }
             }
         }
-
-        return new Tensor(outData);
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput, double learningRate) {
+    public Tensor backward(Tensor gradOutput) {
+        int batch = gradOutput.getBatch();
         int channels = gradOutput.getChannels();
-        int outH = gradOutput.getHeight();
-        int outW = gradOutput.getWidth();
+        int outPlane = gradOutput.getHeight() * gradOutput.getWidth();
 
-        float[][][] gradOutData = gradOutput.getData();
+        float[] gradOut = gradOutput.getBuffer();
+        int gBase = gradOutput.getOffset();
 
         // ✅ 用 forward 缓存的 input 尺寸，保证与 ReLU 输入一致
-        float[][][] gradInput = new float[channels][inputHeight][inputWidth];
-
-        for (int c = 0; c < channels; c++) {
-            for (int oh = 0; oh < outH; oh++) {
-                for (int ow = 0; ow < outW; ow++) {
-                    int ih = maxIndexes[c][oh][ow][0];
-                    int iw = maxIndexes[c][oh][ow][1];
-                    gradInput[c][ih][iw] += gradOutData[c][oh][ow];
-                }
+        Tensor gradInput = Tensor.reuse(gradInputBuffer, batch, channels, inputHeight, inputWidth);
+        gradInput.fill(0);
+        float[] gradIn = gradInput.getBuffer();
+        int inBase = gradInput.getOffset();
+        int inPlane = inputHeight * inputWidth;
+
+        int planes = batch * channels;
+        for (int c = 0; c < planes; c++) {
+            int o = c * outPlane;
+            int plane = inBase + c * inPlane;
+            for (int i = 0; i < outPlane; i++) {
+                gradIn[plane + maxIndexes[o + i]] += gradOut[gBase + o + i];
             }
         }
 
-        return new Tensor(gradInput);
+        return gradInput;
     }
 
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        int outH = (inputShape[2] - poolSize) / stride + 1;
+        int outW = (inputShape[3] - poolSize) / stride + 1;
+        return new int[]{inputShape[0], inputShape[1], outH, outW};
+    }
+
+    @Override
+    public void bindBuffers(Tensor output, Tensor gradInput) {
+        this.outputBuffer = output;
+        this.gradInputBuffer = gradInput;
+    }
 }
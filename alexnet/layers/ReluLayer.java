@@ -1,35 +1,49 @@
 package alexnet.layers;
 
 import alexnet.core.Tensor;
+import alexnet.core.VectorOps;
 import alexnet.network.Layer;
 
 public class ReluLayer implements Layer {
     private Tensor input;
+    private Tensor outputBuffer;    // 由 TensorArena 绑定，每次迭代复用
+    private Tensor gradInputBuffer;
 
     @Override
     public Tensor forward(Tensor input) {
         this.input = input;
-        return input.apply(x -> Math.max(0, x));
+        Tensor output = Tensor.reuse(outputBuffer, input.getBatch(), input.getChannels(), input.getHeight(), input.getWidth());
+        VectorOps.get().relu(input.getBuffer(), input.getOffset(), output.getBuffer(), output.getOffset(), output.size());
+        return output;
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput, double learningRate) {
+    public Tensor infer(Tensor input, Tensor output) {
+        VectorOps.get().relu(input.getBuffer(), input.getOffset(), output.getBuffer(), output.getOffset(), output.size());
+        return output;
+    }
+
+    @Override
+    public Tensor backward(Tensor gradOutput) {
 //        if (!Tensor.shapeEquals(input, gradOutput)) {
 //            throw new IllegalArgumentException("Shape mismatch in ReLU backward: input="
 //                    + input.getShapeString() + ", gradOutput=" + gradOutput.getShapeString());
 //        }
-        float[][][] gradIn = new float[input.getChannels()][input.getHeight()][input.getWidth()];
-        float[][][] inData = input.getData();
-        float[][][] gradOutData = gradOutput.getData();
-
-        for (int c = 0; c < input.getChannels(); c++) {
-            for (int h = 0; h < input.getHeight(); h++) {
-                for (int w = 0; w < input.getWidth(); w++) {
-                    gradIn[c][h][w] = inData[c][h][w] > 0 ? gradOutData[c][h][w] : 0;
-                }
-            }
-        }
-
-        return new Tensor(gradIn);
+        Tensor gradInput = Tensor.reuse(gradInputBuffer, input.getBatch(), input.getChannels(), input.getHeight(), input.getWidth());
+        VectorOps.get().reluBackward(input.getBuffer(), input.getOffset(),
+                gradOutput.getBuffer(), gradOutput.getOffset(), gradInput.getBuffer(), gradInput.getOffset(), gradInput.size());
+
+        return gradInput;
+    }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        return inputShape.clone();
+    }
+
+    @Override
+    public void bindBuffers(Tensor output, Tensor gradInput) {
+        this.outputBuffer = output;
+        this.gradInputBuffer = gradInput;
     }
 }
@@ -0,0 +1,300 @@
+package alexnet.layers;
+
+import alexnet.core.Tensor;
+import alexnet.core.VectorOps;
+import alexnet.network.ParameterLayer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按输出维度切分（张量并行）的全连接层：输出行平均分成 shards 段，第 k 段的权重、梯度与更新
+ * 始终由固定的第 k 个分片线程负责（第 0 段在调用方线程上执行），fc6/fc7 的权重读取因此分摊到多个核上，
+ * 各核反复访问的始终是同一块权重。
+ * <ul>
+ *     <li>前向：各分片算出自己那几列输出，直接写进整个 batch 的输出张量（共享内存下的 all-gather）；</li>
+ *     <li>反向：各分片先各自算 dW、db 与部分 dX，再按输入列分段把各分片的部分 dX 按固定顺序求和；</li>
+ *     <li>update：各分片只更新自己的行。</li>
+ * </ul>
+ * 参数仍是一个 [outputSize][inputSize] 行优先的平铺数组，每个分片拥有其中连续的一段行，
+ * 因此与 {@link FCLayer} 的 checkpoint、权重共享和梯度同步完全兼容，两者可以互换。
+ * <p>
+ * 每个实例有自己的 shards-1 个分片线程，多个副本同时前向时互不排队；线程空闲一段时间后自动退出，下次调用时再建。
+ * 调用方在做完第 0 段后阻塞等待其余分片，因此分片数加上其他并行任务不宜超过核数。
+ * 反向时每个分片各有一份 [N][inputSize] 的部分 dX，额外占用 shards × N × inputSize 个 float
+ * （fc6 在 batch 128、8 个分片时约 36MB），这部分缓冲区不经过 TensorArena 规划。
+ */
+public class ShardedFCLayer implements ParameterLayer {
+    private static final long IDLE_SECONDS = 30;
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private final int inputSize;
+    private final int outputSize;
+    private final int shards;
+    private final int[] rowStart;   // 第 k 个分片负责 [rowStart[k], rowStart[k+1]) 行
+    private final ExecutorService[] threads;   // 第 k 个分片的专属线程，第 0 个分片不需要
+
+    private float[] weights;   // [outputSize][inputSize] 平铺，行优先
+    private float[] biases;    // [outputSize]
+
+    private Tensor inputCache;
+    private float[] gradWeights; // 第一次反向时才分配
+    private float[] gradBiases;
+    private final float[][] partialGradInput;    // 各分片的部分 dX [N][inputSize]，由分片线程分配
+
+    private Tensor outputBuffer;
+    private Tensor gradInputBuffer;
+
+    private interface ShardBody {
+        void run(int shard) throws Exception;
+    }
+
+    public ShardedFCLayer(int inputSize, int outputSize, int shards) {
+        this(inputSize, outputSize, shards, true);
+    }
+
+    /**
+     * @param shards     分片数，不超过 outputSize
+     * @param randomInit 为 false 时权重保持全零，用于随后从 checkpoint 加载
+     */
+    public ShardedFCLayer(int inputSize, int outputSize, int shards, boolean randomInit) {
+        if (shards < 1 || shards > outputSize) {
+            throw new IllegalArgumentException("分片数必须在 [1, " + outputSize + "] 内: " + shards);
+        }
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.shards = shards;
+        this.rowStart = new int[shards + 1];
+        for (int k = 0; k <= shards; k++) {
+            rowStart[k] = (int) ((long) outputSize * k / shards);
+        }
+        this.threads = newShardThreads(shards);
+        this.partialGradInput = new float[shards][];
+        this.weights = new float[outputSize * inputSize];
+        this.biases = new float[outputSize];
+
+        if (randomInit) {
+            // Xavier 初始化，与 FCLayer 相同
+            Random rand = new Random();
+            float limit = (float) Math.sqrt(6.0 / (inputSize + outputSize));
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = (rand.nextFloat() * 2 - 1) * limit;
+            }
+        }
+    }
+
+    // 本实例的分片线程，各自只有一个线程，空闲超时后退出，不再使用的层不会一直占着线程
+    private static ExecutorService[] newShardThreads(int count) {
+        int id = instances.incrementAndGet();
+        ExecutorService[] threads = new ExecutorService[count];
+        for (int k = 1; k < count; k++) {
+            String name = "fc" + id + "-shard-" + k;
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, name);
+                        t.setDaemon(true);
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            threads[k] = executor;
+        }
+        return threads;
+    }
+
+    public int getShardCount() {
+        return shards;
+    }
+
+    @Override
+    public Tensor forward(Tensor input) {
+        checkInput(input);
+        this.inputCache = input;
+        Tensor output = Tensor.reuse(outputBuffer, input.getBatch(), 1, 1, outputSize);
+        multiply(input, output);
+        return output;
+    }
+
+    @Override
+    public Tensor infer(Tensor input, Tensor output) {
+        checkInput(input);
+        multiply(input, output);
+        return output;
+    }
+
+    private void checkInput(Tensor input) {
+        if (input.sampleSize() != inputSize) {
+            throw new IllegalArgumentException("FC 输入维度不匹配: " + input.sampleSize() + " != " + inputSize);
+        }
+    }
+
+    private void multiply(Tensor input, Tensor output) {
+        int batch = input.getBatch();
+        float[] in = input.getBuffer();
+        int inBase = input.getOffset();
+        float[] out = output.getBuffer();
+        int outBase = output.getOffset();
+
+        // 每个分片只读自己的权重行，写输出中对应的列
+        runShards(k -> {
+            VectorOps ops = VectorOps.get();
+            for (int o = rowStart[k]; o < rowStart[k + 1]; o++) {
+                int row = o * inputSize;
+                for (int n = 0; n < batch; n++) {
+                    out[outBase + n * outputSize + o] = biases[o] + ops.dot(weights, row, in, inBase + n * inputSize, inputSize);
+                }
+            }
+        });
+    }
+
+    @Override
+    public Tensor backward(Tensor gradOutput) {
+        int batch = inputCache.getBatch();
+        float[] gradOut = gradOutput.getBuffer();
+        int gBase = gradOutput.getOffset();
+        float[] in = inputCache.getBuffer();
+        int inBase = inputCache.getOffset();
+        ensureGradients();
+
+        Tensor gradInputTensor = Tensor.reuse(gradInputBuffer, batch, 1, 1, inputSize);
+        float[] gradInput = gradInputTensor.getBuffer();
+        int gInBase = gradInputTensor.getOffset();
+        int length = batch * inputSize;
+
+        // 第一步：各分片用自己的行累加 dW、db，部分 dX 写进分片自己的缓冲区
+        runShards(k -> {
+            float[] partial = partialGradInput[k];
+            if (partial == null || partial.length < length) {
+                partial = new float[length];
+                partialGradInput[k] = partial;
+            } else {
+                Arrays.fill(partial, 0, length, 0);
+            }
+            VectorOps ops = VectorOps.get();
+            for (int o = rowStart[k]; o < rowStart[k + 1]; o++) {
+                int row = o * inputSize;
+                for (int n = 0; n < batch; n++) {
+                    float g = gradOut[gBase + n * outputSize + o];
+                    if (g == 0) continue;
+                    ops.axpy(g, weights, row, partial, n * inputSize, inputSize);
+                    ops.axpy(g, in, inBase + n * inputSize, gradWeights, row, inputSize);
+                    gradBiases[o] += g;
+                }
+            }
+        });
+
+        // 第二步：按元素区间切给各分片，依分片编号顺序求和，结果与线程调度无关
+        runShards(k -> {
+            int start = (int) ((long) length * k / shards);
+            int end = (int) ((long) length * (k + 1) / shards);
+            System.arraycopy(partialGradInput[0], start, gradInput, gInBase + start, end - start);
+            VectorOps ops = VectorOps.get();
+            for (int s = 1; s < shards; s++) {
+                ops.add(gradInput, gInBase + start, partialGradInput[s], start, gradInput, gInBase + start, end - start);
+            }
+        });
+        return gradInputTensor;
+    }
+
+    @Override
+    public void update(double learningRate) {
+        if (gradWeights == null) return;   // 还没有做过反向
+        float lr = (float) learningRate;
+        runShards(k -> {
+            VectorOps ops = VectorOps.get();
+            int first = rowStart[k];
+            int rows = rowStart[k + 1] - first;
+            ops.axpy(-lr, gradWeights, first * inputSize, weights, first * inputSize, rows * inputSize);
+            ops.axpy(-lr, gradBiases, first, biases, first, rows);
+            Arrays.fill(gradWeights, first * inputSize, (first + rows) * inputSize, 0);
+            Arrays.fill(gradBiases, first, first + rows, 0);
+        });
+    }
+
+    // 把 body 交给各分片的线程执行，第 0 个分片就在调用方线程上做，然后等待其余分片完成
+    private void runShards(ShardBody body) {
+        Future<?>[] futures = new Future<?>[shards];
+        for (int k = 1; k < shards; k++) {
+            int shard = k;
+            futures[k] = threads[k].submit(() -> {
+                body.run(shard);
+                return null;
+            });
+        }
+        RuntimeException failure = null;
+        try {
+            body.run(0);
+        } catch (RuntimeException e) {
+            failure = e;
+        } catch (Exception e) {
+            failure = new IllegalStateException(e);
+        }
+        // 出错时也要等其余分片结束，它们还在写共享的缓冲区
+        for (int k = 1; k < shards; k++) {
+            Future<?> f = futures[k];
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (failure == null) {
+                    failure = cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待 FC 分片时被中断", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public float[][] getParameters() {
+        return new float[][]{weights, biases};
+    }
+
+    @Override
+    public float[][] getGradients() {
+        ensureGradients();
+        return new float[][]{gradWeights, gradBiases};
+    }
+
+    @Override
+    public int[][] getParameterShapes() {
+        return new int[][]{{outputSize, inputSize}, {outputSize}};
+    }
+
+    @Override
+    public void setParameters(float[][] parameters) {
+        if (parameters.length != 2 || parameters[0].length != weights.length || parameters[1].length != biases.length) {
+            throw new IllegalArgumentException("参数形状不匹配");
+        }
+        weights = parameters[0];
+        biases = parameters[1];
+    }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        return new int[]{inputShape[0], 1, 1, outputSize};
+    }
+
+    @Override
+    public void bindBuffers(Tensor output, Tensor gradInput) {
+        this.outputBuffer = output;
+        this.gradInputBuffer = gradInput;
+    }
+
+    private void ensureGradients() {
+        if (gradWeights == null) {
+            gradWeights = new float[weights.length];
+            gradBiases = new float[outputSize];
+        }
+    }
+}
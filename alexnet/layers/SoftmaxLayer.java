@@ -5,38 +5,65 @@ import alexnet.network.Layer;
 
 public class SoftmaxLayer implements Layer {
     private Tensor output; // 缓存 softmax 结果用于反向传播
+    private Tensor outputBuffer;
 
     @Override
     public Tensor forward(Tensor input) {
-        float[] logits = input.getData()[0][0]; // 假设输入为 [1][1][N]
-        float[] probs = new float[logits.length];
+        // 假设输入为 [N][1][1][K]，对每个样本分别做 softmax
+        output = Tensor.reuse(outputBuffer, input.getBatch(), 1, 1, input.sampleSize());
+        softmax(input, output);
+        return output;
+    }
 
-        // 数值稳定性处理：减去最大值
-        float maxLogit = Float.NEGATIVE_INFINITY;
-        for (float v : logits) {
-            if (v > maxLogit) maxLogit = v;
-        }
+    @Override
+    public Tensor infer(Tensor input, Tensor output) {
+        softmax(input, output);
+        return output;
+    }
 
-        float sumExp = 0;
-        for (int i = 0; i < logits.length; i++) {
-            probs[i] = (float) Math.exp(logits[i] - maxLogit);
-            sumExp += probs[i];
-        }
+    private static void softmax(Tensor input, Tensor output) {
+        int batch = input.getBatch();
+        int k = input.sampleSize();
+        float[] logits = input.getBuffer();
+        float[] probs = output.getBuffer();
 
-        for (int i = 0; i < probs.length; i++) {
-            probs[i] /= sumExp;
-        }
+        for (int n = 0; n < batch; n++) {
+            int base = input.index(n, 0, 0, 0);
+            int pBase = output.index(n, 0, 0, 0);
 
-        float[][][] outData = new float[1][1][probs.length];
-        outData[0][0] = probs;
-        output = new Tensor(outData);
-        return output;
+            // 数值稳定性处理：减去最大值
+            float maxLogit = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < k; i++) {
+                if (logits[base + i] > maxLogit) maxLogit = logits[base + i];
+            }
+
+            float sumExp = 0;
+            for (int i = 0; i < k; i++) {
+                probs[pBase + i] = (float) Math.exp(logits[base + i] - maxLogit);
+                sumExp += probs[pBase + i];
+            }
+
+            for (int i = 0; i < k; i++) {
+                probs[pBase + i] /= sumExp;
+            }
+        }
     }
 
     @Override
-    public Tensor backward(Tensor gradOutput, double learningRate) {
+    public Tensor backward(Tensor gradOutput) {
         // gradOutput 是交叉熵传来的 ∇L/∇softmax_output
         // 通常为 softmax_output - one_hot(target)
         return gradOutput;
     }
+
+    @Override
+    public int[] outputShape(int[] inputShape) {
+        return new int[]{inputShape[0], 1, 1, inputShape[1] * inputShape[2] * inputShape[3]};
+    }
+
+    // 反向直接透传 gradOutput，不需要输入梯度缓冲区
+    @Override
+    public void bindBuffers(Tensor output, Tensor gradInput) {
+        this.outputBuffer = output;
+    }
 }
@@ -0,0 +1,213 @@
+package alexnet.layers;
+
+import alexnet.core.MatrixUtils;
+import alexnet.core.Tensor;
+
+/**
+ * Winograd F(2x2, 3x3) 卷积，适用于 3x3、stride 1 的卷积层（AlexNet 的 conv3~conv5）。
+ * 每个 2x2 输出块由 4x4 输入块经 Y = A^T [(G g G^T) ⊙ (B^T d B)] A 得到，乘法次数从 36 降到 16。
+ * 对 16 个变换域位置 ξ 分别做 GEMM：M[ξ][outC][tiles] = U[ξ][outC][inC] * V[ξ][inC][tiles]。
+ * <p>
+ * 变换后的卷积核 U 按层的 weightsVersion 缓存，权重更新后自动重新计算。
+ * 输入梯度同样走 Winograd：dX 等价于以翻转并转置的卷积核、padding 2-p 对 dY 做 stride 1 卷积。
+ * 权重梯度与不支持的形状交给 {@link Im2colConvEngine}。
+ */
+public class WinogradConvEngine implements ConvEngine {
+    private static final int TILE = 4;
+    private static final int POSITIONS = TILE * TILE;
+
+    private final Im2colConvEngine fallback = new Im2colConvEngine();
+
+    private float[] filters;            // U[16][outC][inC]
+    private long filtersVersion = -1;
+    private float[] gradFilters;        // 翻转转置后的 U'[16][inC][outC]
+    private long gradFiltersVersion = -1;
+
+    private float[] transformedInput;   // V[16][channels][tiles]
+    private float[] products;           // M[16][outChannels][tiles]
+    private final float[] tile = new float[POSITIONS];
+
+    /**
+     * 只处理 3x3、stride 1 且 padding 不超过 2 的卷积
+     */
+    public static boolean supports(ConvLayer layer) {
+        return layer.getKernelSize() == 3 && layer.getStride() == 1
+                && layer.getPadding() >= 0 && layer.getPadding() <= 2;
+    }
+
+    @Override
+    public void forward(ConvLayer layer, Tensor input, Tensor output) {
+        if (!supports(layer)) {
+            fallback.forward(layer, input, output);
+            return;
+        }
+        if (filtersVersion != layer.getWeightsVersion() || filters == null) {
+            filters = transformFilters(filters, layer.getWeights(), layer.getOutChannels(), layer.getInChannels(), false);
+            filtersVersion = layer.getWeightsVersion();
+        }
+        for (int n = 0; n < input.getBatch(); n++) {
+            convolve(input.getBuffer(), input.index(n, 0, 0, 0), layer.getInChannels(),
+                    input.getHeight(), input.getWidth(), layer.getPadding(),
+                    filters, layer.getOutChannels(), layer.getBiases(),
+                    output.getBuffer(), output.index(n, 0, 0, 0), output.getHeight(), output.getWidth());
+        }
+    }
+
+    @Override
+    public void backward(ConvLayer layer, Tensor input, Tensor gradOutput, Tensor gradInput) {
+        if (!supports(layer)) {
+            fallback.backward(layer, input, gradOutput, gradInput);
+            return;
+        }
+        fallback.backwardWeights(layer, input, gradOutput);
+
+        if (gradFiltersVersion != layer.getWeightsVersion() || gradFilters == null) {
+            gradFilters = transformFilters(gradFilters, layer.getWeights(), layer.getOutChannels(), layer.getInChannels(), true);
+            gradFiltersVersion = layer.getWeightsVersion();
+        }
+        int backPadding = 2 - layer.getPadding();
+        for (int n = 0; n < gradOutput.getBatch(); n++) {
+            convolve(gradOutput.getBuffer(), gradOutput.index(n, 0, 0, 0), layer.getOutChannels(),
+                    gradOutput.getHeight(), gradOutput.getWidth(), backPadding,
+                    gradFilters, layer.getInChannels(), null,
+                    gradInput.getBuffer(), gradInput.index(n, 0, 0, 0), gradInput.getHeight(), gradInput.getWidth());
+        }
+    }
+
+    /**
+     * 计算 U = G g G^T，结果按 [ξ][rows][cols] 存放。
+     * flipped 为 false 时 rows=outC、cols=inC；为 true 时使用旋转 180° 的卷积核并交换两维，用于求输入梯度。
+     * 每个位置都会被覆盖写入，reuse 足够大时直接复用。
+     */
+    private static float[] transformFilters(float[] reuse, float[] weights, int outChannels, int inChannels, boolean flipped) {
+        int rows = flipped ? inChannels : outChannels;
+        int cols = flipped ? outChannels : inChannels;
+        int plane = rows * cols;
+        float[] u = ensure(reuse, POSITIONS * plane);
+        float[] g = new float[9];
+        float[] gg = new float[12];
+
+        for (int oc = 0; oc < outChannels; oc++) {
+            for (int ic = 0; ic < inChannels; ic++) {
+                int w = (oc * inChannels + ic) * 9;
+                for (int i = 0; i < 9; i++) {
+                    g[i] = flipped ? weights[w + 8 - i] : weights[w + i];
+                }
+                // G g：4x3
+                for (int j = 0; j < 3; j++) {
+                    float g0 = g[j], g1 = g[3 + j], g2 = g[6 + j];
+                    gg[j] = g0;
+                    gg[3 + j] = 0.5f * (g0 + g1 + g2);
+                    gg[6 + j] = 0.5f * (g0 - g1 + g2);
+                    gg[9 + j] = g2;
+                }
+                // (G g) G^T：4x4
+                int dst = flipped ? ic * cols + oc : oc * cols + ic;
+                for (int i = 0; i < TILE; i++) {
+                    float a0 = gg[i * 3], a1 = gg[i * 3 + 1], a2 = gg[i * 3 + 2];
+                    u[(i * TILE) * plane + dst] = a0;
+                    u[(i * TILE + 1) * plane + dst] = 0.5f * (a0 + a1 + a2);
+                    u[(i * TILE + 2) * plane + dst] = 0.5f * (a0 - a1 + a2);
+                    u[(i * TILE + 3) * plane + dst] = a2;
+                }
+            }
+        }
+        return u;
+    }
+
+    /**
+     * 对单个样本做 3x3、stride 1 的卷积：in[inC][inH][inW] -> out[outC][outH][outW]，覆盖写入 out
+     */
+    private void convolve(float[] in, int inBase, int inChannels, int inH, int inW, int padding,
+                          float[] u, int outChannels, float[] biases,
+                          float[] out, int outBase, int outH, int outW) {
+        int tilesH = (outH + 1) / 2;
+        int tilesW = (outW + 1) / 2;
+        int tiles = tilesH * tilesW;
+        int vPlane = inChannels * tiles;
+        int mPlane = outChannels * tiles;
+        transformedInput = ensure(transformedInput, POSITIONS * vPlane);
+        products = ensure(products, POSITIONS * mPlane);
+        float[] v = transformedInput;
+        float[] m = products;
+        float[] d = tile;
+
+        // V = B^T d B
+        for (int ic = 0; ic < inChannels; ic++) {
+            int plane = inBase + ic * inH * inW;
+            for (int ty = 0; ty < tilesH; ty++) {
+                for (int tx = 0; tx < tilesW; tx++) {
+                    int y0 = ty * 2 - padding;
+                    int x0 = tx * 2 - padding;
+                    for (int i = 0; i < TILE; i++) {
+                        int y = y0 + i;
+                        boolean rowInside = y >= 0 && y < inH;
+                        for (int j = 0; j < TILE; j++) {
+                            int x = x0 + j;
+                            d[i * TILE + j] = rowInside && x >= 0 && x < inW ? in[plane + y * inW + x] : 0f;
+                        }
+                    }
+                    int dst = ic * tiles + ty * tilesW + tx;
+                    for (int j = 0; j < TILE; j++) {
+                        float t0 = d[j] - d[8 + j];
+                        float t1 = d[4 + j] + d[8 + j];
+                        float t2 = d[8 + j] - d[4 + j];
+                        float t3 = d[4 + j] - d[12 + j];
+                        d[j] = t0;
+                        d[4 + j] = t1;
+                        d[8 + j] = t2;
+                        d[12 + j] = t3;
+                    }
+                    for (int i = 0; i < TILE; i++) {
+                        float r0 = d[i * TILE], r1 = d[i * TILE + 1], r2 = d[i * TILE + 2], r3 = d[i * TILE + 3];
+                        v[(i * TILE) * vPlane + dst] = r0 - r2;
+                        v[(i * TILE + 1) * vPlane + dst] = r1 + r2;
+                        v[(i * TILE + 2) * vPlane + dst] = r2 - r1;
+                        v[(i * TILE + 3) * vPlane + dst] = r1 - r3;
+                    }
+                }
+            }
+        }
+
+        // M[ξ] = U[ξ] * V[ξ]
+        for (int xi = 0; xi < POSITIONS; xi++) {
+            MatrixUtils.gemm(u, xi * outChannels * inChannels, v, xi * vPlane, m, xi * mPlane,
+                    outChannels, tiles, inChannels, false);
+        }
+
+        // Y = A^T M A
+        for (int oc = 0; oc < outChannels; oc++) {
+            float bias = biases == null ? 0f : biases[oc];
+            int plane = outBase + oc * outH * outW;
+            for (int ty = 0; ty < tilesH; ty++) {
+                for (int tx = 0; tx < tilesW; tx++) {
+                    int src = oc * tiles + ty * tilesW + tx;
+                    for (int xi = 0; xi < POSITIONS; xi++) {
+                        d[xi] = m[xi * mPlane + src];
+                    }
+                    // A^T M：两行
+                    float a0 = d[0] + d[4] + d[8], a1 = d[1] + d[5] + d[9];
+                    float a2 = d[2] + d[6] + d[10], a3 = d[3] + d[7] + d[11];
+                    float b0 = d[4] - d[8] - d[12], b1 = d[5] - d[9] - d[13];
+                    float b2 = d[6] - d[10] - d[14], b3 = d[7] - d[11] - d[15];
+                    // (A^T M) A：2x2
+                    float s00 = a0 + a1 + a2, s01 = a1 - a2 - a3;
+                    float s10 = b0 + b1 + b2, s11 = b1 - b2 - b3;
+                    int oy = ty * 2;
+                    int ox = tx * 2;
+                    int o = plane + oy * outW + ox;
+                    out[o] = s00 + bias;
+                    if (ox + 1 < outW) out[o + 1] = s01 + bias;
+                    if (oy + 1 < outH) {
+                        out[o + outW] = s10 + bias;
+                        if (ox + 1 < outW) out[o + outW + 1] = s11 + bias;
+                    }
+                }
+            }
+        }
+    }
+
+    private static float[] ensure(float[] buf, int size) {
+        return buf != null && buf.length >= size ? buf : new float[size];
+    }
+}
@@ -4,46 +4,63 @@ import alexnet.core.Tensor;
 
 public class CrossEntropyLoss {
     private float lastLoss;
+    private Tensor gradBuffer;  // 反向梯度在 batch 大小不变时复用
 
     /**
-     * 计算交叉熵损失
-     * @param predicted softmax 输出，shape: [1][1][num_classes]
-     * @param targetOneHot one-hot 标签，shape: [1][1][num_classes]
-     * @return 标量损失值
+     * 计算交叉熵损失（对 batch 取平均）
+     * @param predicted softmax 输出，shape: [N][1][1][num_classes]
+     * @param targetOneHot one-hot 标签，shape: [N][1][1][num_classes]
+     * @return 平均到每个样本的标量损失值
      */
     public float forward(Tensor predicted, Tensor targetOneHot) {
-        float[] probs = predicted.getData()[0][0];
-        float[] target = targetOneHot.getData()[0][0];
+        float[] probs = predicted.getBuffer();
+        float[] target = targetOneHot.getBuffer();
+        int batch = predicted.getBatch();
+        int k = Math.min(predicted.sampleSize(), targetOneHot.sampleSize());
 
         float epsilon = 1e-10f;  // 防止 log(0)
         float loss = 0;
 
-        for (int i = 0; i < probs.length; i++) {
-            loss -= target[i] * Math.log(probs[i] + epsilon);
+        for (int n = 0; n < batch; n++) {
+            int p = predicted.index(n, 0, 0, 0);
+            int t = targetOneHot.index(n, 0, 0, 0);
+            for (int i = 0; i < k; i++) {
+                loss -= target[t + i] * Math.log(probs[p + i] + epsilon);
+            }
         }
+        loss /= batch;
 
         this.lastLoss = loss;
         return loss;
     }
 
     /**
-     * 返回 softmax 的梯度：∇L/∇z = softmax_output - one_hot
+     * 返回 softmax 的梯度：∇L/∇z = (softmax_output - one_hot) / N
+     * 除以 N 与 forward 的平均损失一致，使每个 batch 只做一次参数更新时步长与 batch 大小无关。
      * @param predicted softmax 输出
      * @param targetOneHot one-hot 标签
-     * @return 梯度张量，与 predicted 形状相同
+     * @return 梯度张量，与 predicted 形状相同；下一次调用会覆盖它
      */
     public Tensor backward(Tensor predicted, Tensor targetOneHot) {
-        float[] probs = predicted.getData()[0][0];
-        float[] target = targetOneHot.getData()[0][0];
-        float[] grad = new float[probs.length];
+        float[] probs = predicted.getBuffer();
+        float[] target = targetOneHot.getBuffer();
+        int batch = predicted.getBatch();
+        int k = predicted.sampleSize();
+        int tk = targetOneHot.sampleSize();
+        float scale = 1.0f / batch;
 
-        for (int i = 0; i < probs.length; i++) {
-            grad[i] = probs[i] - target[i];  // softmax_output - one_hot
+        Tensor gradTensor = gradBuffer = Tensor.reuse(gradBuffer, batch, 1, 1, k);
+        float[] grad = gradTensor.getBuffer();
+        for (int n = 0; n < batch; n++) {
+            int p = predicted.index(n, 0, 0, 0);
+            int t = targetOneHot.index(n, 0, 0, 0);
+            for (int i = 0; i < k; i++) {
+                float y = i < tk ? target[t + i] : 0;
+                grad[n * k + i] = (probs[p + i] - y) * scale;  // softmax_output - one_hot
+            }
         }
 
-        float[][][] gradData = new float[1][1][grad.length];
-        gradData[0][0] = grad;
-        return new Tensor(gradData);
+        return gradTensor;
     }
 
     public float getLastLoss() {
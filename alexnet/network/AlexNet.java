@@ -1,8 +1,15 @@
 package alexnet.network;
 
+import alexnet.core.Parallel;
 import alexnet.core.Tensor;
+import alexnet.core.TensorArena;
 import alexnet.layers.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class AlexNet {
     // 层对象声明
     private ConvLayer conv1;
@@ -25,114 +32,327 @@ public class AlexNet {
 
     private FlattenLayer flatten;
 
-    private FCLayer fc6;
+    private ParameterLayer fc6;
     private ReluLayer relu6;
 
-    private FCLayer fc7;
+    private ParameterLayer fc7;
     private ReluLayer relu7;
 
     private FCLayer fc8; // 输出1000类
 
     private SoftmaxLayer softmax;
 
+    // 按前向顺序排列的全部层
+    private final List<Layer> layers;
+    // 其中带参数的层（conv1~conv5、fc6~fc8），checkpoint 按此顺序保存
+    private final List<ParameterLayer> parameterLayers;
+
+    private TensorArena arena;  // planBuffers 规划出的激活与梯度缓冲区
+
+    // 推理模式的缓冲区：每层输出只存活到下一层读完，按 planInference 的最大 batch 规划
+    private InferencePlan inference;
+
     public AlexNet() {
+        this(true);
+    }
+
+    /**
+     * @param randomInit 为 false 时跳过权重的随机初始化（约 6000 万个随机数），用于紧接着从 checkpoint 加载
+     */
+    public AlexNet(boolean randomInit) {
         // 初始化层，参数根据AlexNet论文或者你自己设置
-        conv1 = new ConvLayer(3, 96, 11, 4, 2);
+        // 卷积层走多线程 im2col + 分块 GEMM，单核时 3x3 的 conv3~conv5 改走 Winograd；可通过 ConvLayer.setEngine 按层替换
+        conv1 = new ConvLayer(3, 96, 11, 4, 2, new ParallelConvEngine(), randomInit);
         relu1 = new ReluLayer();
         pool1 = new PoolingLayer(3, 2);
 
-        conv2 = new ConvLayer(96, 256, 5, 1, 2);
+        conv2 = new ConvLayer(96, 256, 5, 1, 2, new ParallelConvEngine(), randomInit);
         relu2 = new ReluLayer();
         pool2 = new PoolingLayer(3, 2);
 
-        conv3 = new ConvLayer(256, 384, 3, 1, 1);
+        conv3 = new ConvLayer(256, 384, 3, 1, 1, engine3x3(), randomInit);
         relu3 = new ReluLayer();
 
-        conv4 = new ConvLayer(384, 384, 3, 1, 1);
+        conv4 = new ConvLayer(384, 384, 3, 1, 1, engine3x3(), randomInit);
         relu4 = new ReluLayer();
 
-        conv5 = new ConvLayer(384, 256, 3, 1, 1);
+        conv5 = new ConvLayer(384, 256, 3, 1, 1, engine3x3(), randomInit);
         relu5 = new ReluLayer();
         pool5 = new PoolingLayer(3, 2);
 
         flatten = new FlattenLayer();
 
-        fc6 = new FCLayer(256 * 6 * 6, 4096);
+        fc6 = largeFcLayer(256 * 6 * 6, 4096, randomInit);
         relu6 = new ReluLayer();
 
-        fc7 = new FCLayer(4096, 4096);
+        fc7 = largeFcLayer(4096, 4096, randomInit);
         relu7 = new ReluLayer();
 
-        fc8 = new FCLayer(4096, 200);
+        fc8 = new FCLayer(4096, 200, randomInit);
 
         softmax = new SoftmaxLayer();
-    }
-
-    // 前向传播
-    public Tensor forward(Tensor input) {
-        Tensor x = conv1.forward(input);
-        x = relu1.forward(x);
-        x = pool1.forward(x);
 
-        x = conv2.forward(x);
-        x = relu2.forward(x);
-        x = pool2.forward(x);
+        layers = Collections.unmodifiableList(Arrays.asList(
+                conv1, relu1, pool1,
+                conv2, relu2, pool2,
+                conv3, relu3,
+                conv4, relu4,
+                conv5, relu5, pool5,
+                flatten,
+                fc6, relu6,
+                fc7, relu7,
+                fc8,
+                softmax));
+
+        List<ParameterLayer> parameterLayers = new ArrayList<>();
+        for (Layer layer : layers) {
+            if (layer instanceof ParameterLayer) {
+                parameterLayers.add((ParameterLayer) layer);
+            }
+        }
+        this.parameterLayers = Collections.unmodifiableList(parameterLayers);
+    }
 
-        x = conv3.forward(x);
-        x = relu3.forward(x);
+    // 单线程时 Winograd 乘法最少；多核时按通道并行的 im2col 吞吐更高
+    private static ConvEngine engine3x3() {
+        return Parallel.parallelism() > 1 ? new ParallelConvEngine() : new WinogradConvEngine();
+    }
 
-        x = conv4.forward(x);
-        x = relu4.forward(x);
+    // fc6、fc7 的权重占全部参数的九成，-Dalexnet.fcShards=N（N > 1）时按输出维度切给 N 个分片线程，默认不切分
+    private static ParameterLayer largeFcLayer(int inputSize, int outputSize, boolean randomInit) {
+        int shards = Integer.getInteger("alexnet.fcShards", 1);
+        return shards > 1 ? new ShardedFCLayer(inputSize, outputSize, shards, randomInit)
+                : new FCLayer(inputSize, outputSize, randomInit);
+    }
 
-        x = conv5.forward(x);
-        x = relu5.forward(x);
-        x = pool5.forward(x);
+    public List<Layer> getLayers() {
+        return layers;
+    }
 
-        x = flatten.forward(x);
+    public List<ParameterLayer> getParameterLayers() {
+        return parameterLayers;
+    }
 
-        x = fc6.forward(x);
-        x = relu6.forward(x);
+    /**
+     * 让本网络直接引用 source 的参数数组（不拷贝）。两者之后共享权重，但各自持有激活缓冲区与卷积引擎的工作区，
+     * 可以在不同线程上同时做推理；共享期间不要对任何一方调用 update。
+     */
+    public void shareParameters(AlexNet source) {
+        List<ParameterLayer> from = source.getParameterLayers();
+        for (int i = 0; i < parameterLayers.size(); i++) {
+            parameterLayers.get(i).setParameters(from.get(i).getParameters());
+        }
+    }
 
-        x = fc7.forward(x);
-        x = relu7.forward(x);
+    /**
+     * 按输入形状 [batch][channels][height][width] 一次性规划所有层的输出与输入梯度缓冲区，此后训练迭代不再分配激活。
+     * 把一次迭代看成 2L 个步骤：第 i 层前向为步骤 i，反向为步骤 2L-1-i。
+     * 第 i 层的输出要保留到它自己反向结束（后一层的反向还要读它）；第 i 层的输入梯度只在它反向写出、前一层反向读完之间有效，
+     * 因此反向时的梯度可以复用高层已经用完的激活所占的存储。
+     * 只返回视图的层（Flatten）不占缓冲区，经它转手的梯度要一直保留到再前一层的反向读完。
+     * 批大小与规划不同时（如最后一个不满的 batch）各层自动退回临时分配。
+     */
+    public void planBuffers(int batch, int channels, int height, int width) {
+        this.arena = planBuffers(0, layers.size(), new int[]{batch, channels, height, width});
+    }
 
-        x = fc8.forward(x);
+    /**
+     * 只为第 [from, to) 层规划训练缓冲区并绑定到这些层，inputShape 为第 from 层的输入形状。
+     * 规划方式同上，步骤只在这段层内计数；流水线的各段各自调用，每段只占本段激活所需的存储。
+     *
+     * @return 规划出的缓冲区，由调用方持有
+     */
+    public TensorArena planBuffers(int from, int to, int[] inputShape) {
+        int count = to - from;
+        int last = 2 * count - 1;
+        TensorArena arena = new TensorArena();
+        int[][] inShapes = new int[count][];
+        int[][] outShapes = new int[count][];
+        int[] outIds = new int[count];
+        int[] gradIds = new int[count];
+
+        int[] shape = inputShape;
+        for (int i = 0; i < count; i++) {
+            Layer layer = layers.get(from + i);
+            inShapes[i] = shape;
+            shape = layer.outputShape(shape);
+            outShapes[i] = shape;
+            if (layer.returnsView()) {
+                continue;
+            }
+            int gradLast = last - i + 1;
+            for (int j = i - 1; j >= 0 && layers.get(from + j).returnsView(); j--) {
+                gradLast++;
+            }
+            outIds[i] = arena.reserve(volume(outShapes[i]), i, last - i);
+            gradIds[i] = arena.reserve(volume(inShapes[i]), last - i, Math.min(last, gradLast));
+        }
+        arena.allocate();
+
+        for (int i = 0; i < count; i++) {
+            Layer layer = layers.get(from + i);
+            if (layer.returnsView()) {
+                continue;
+            }
+            layer.bindBuffers(view(arena, outIds[i], outShapes[i]), view(arena, gradIds[i], inShapes[i]));
+        }
+        return arena;
+    }
 
-        x = softmax.forward(x);
+    /**
+     * planBuffers 规划出的缓冲区总大小（字节），未规划时为 0
+     */
+    public long getPlannedBytes() {
+        return arena == null ? 0 : (long) arena.getCapacity() * Float.BYTES;
+    }
 
-        return x;
+    /**
+     * 为不超过 maxBatch 的推理输入规划缓冲区。推理时第 i 层的输出只在步骤 [i, i+1] 有效（下一层读完即可释放），
+     * 规划结果相当于在相邻两层的输出之间来回复用（乒乓），峰值约为最大的两个相邻激活之和。
+     */
+    public void planInference(int maxBatch, int channels, int height, int width) {
+        this.inference = planInference(0, layers.size(), new int[]{maxBatch, channels, height, width});
     }
 
-    // 反向传播，lossGrad 是最后的梯度（通常由CrossEntropyLoss给出）
-    public void backward(Tensor lossGrad, double learningRate) {
-        Tensor grad = softmax.backward(lossGrad, learningRate);
+    /**
+     * 只为第 [from, to) 层规划推理缓冲区，inputShape 为第 from 层输入的最大形状。
+     * 返回的规划独立持有缓冲区，层区间互不重叠的几份规划可以在不同线程上同时执行。
+     */
+    public InferencePlan planInference(int from, int to, int[] inputShape) {
+        TensorArena arena = new TensorArena();
+        int[] ids = new int[to - from];
+        int[] shape = inputShape;
+        for (int i = from; i < to; i++) {
+            shape = layers.get(i).outputShape(shape);
+            if (layers.get(i).returnsView()) {
+                ids[i - from] = -1;
+                continue;
+            }
+            // 经只返回视图的层转手时，要保留到再后一层读完
+            int lastRead = i + 1;
+            while (lastRead < to && layers.get(lastRead).returnsView()) {
+                lastRead++;
+            }
+            ids[i - from] = arena.reserve(volume(shape), i - from, lastRead - from);
+        }
+        arena.allocate();
+        return new InferencePlan(layers.subList(from, to), arena, ids, inputShape.clone());
+    }
 
-        grad = fc8.backward(grad, learningRate);
+    /**
+     * 推理前向：不缓存任何反向传播状态，激活只保留到下一层读完。
+     * 返回的张量位于内部缓冲区，下一次调用 infer 时会被覆盖，需要保留请先 {@link Tensor#copy()}。
+     * 输入超出已规划的形状时自动重新规划。
+     */
+    public Tensor infer(Tensor input) {
+        if (inference == null || !inference.accepts(input)) {
+            planInference(input.getBatch(), input.getChannels(), input.getHeight(), input.getWidth());
+        }
+        return inference.run(input);
+    }
 
-        grad = relu7.backward(grad, learningRate);
-        grad = fc7.backward(grad, learningRate);
+    /**
+     * planInference 规划出的缓冲区总大小（字节），未规划时为 0
+     */
+    public long getInferenceBytes() {
+        return inference == null ? 0 : inference.getBytes();
+    }
 
-        grad = relu6.backward(grad, learningRate);
-        grad = fc6.backward(grad, learningRate);
+    /**
+     * 一段连续层的推理缓冲区规划，见 {@link #planInference(int, int, int[])}
+     */
+    public static final class InferencePlan {
+        private final List<Layer> layers;
+        private final TensorArena arena;
+        private final int[] ids;              // 各层输出在 arena 中的编号，只返回视图的层为 -1
+        private final int[] inputShape;       // {最大 batch, C, H, W}
+        private final Tensor[][] views;       // [batch][layer]，按实际 batch 大小懒构造的输出视图
+
+        private InferencePlan(List<Layer> layers, TensorArena arena, int[] ids, int[] inputShape) {
+            this.layers = layers;
+            this.arena = arena;
+            this.ids = ids;
+            this.inputShape = inputShape;
+            this.views = new Tensor[inputShape[0] + 1][];
+        }
+
+        /**
+         * input 的形状是否在规划范围内
+         */
+        public boolean accepts(Tensor input) {
+            return input.getBatch() <= inputShape[0] && input.getChannels() == inputShape[1]
+                    && input.getHeight() == inputShape[2] && input.getWidth() == inputShape[3];
+        }
+
+        /**
+         * 依次推理本段各层；返回值位于本规划的缓冲区，下一次 run 会覆盖
+         */
+        public Tensor run(Tensor input) {
+            if (!accepts(input)) {
+                throw new IllegalArgumentException("输入 " + input.getShapeString() + " 超出推理规划的形状");
+            }
+            int batch = input.getBatch();
+            Tensor[] outputs = views[batch];
+            if (outputs == null) {
+                outputs = new Tensor[layers.size()];
+                int[] shape = {batch, inputShape[1], inputShape[2], inputShape[3]};
+                for (int i = 0; i < outputs.length; i++) {
+                    shape = layers.get(i).outputShape(shape);
+                    outputs[i] = ids[i] < 0 ? null : view(arena, ids[i], shape);
+                }
+                views[batch] = outputs;
+            }
+
+            Tensor x = input;
+            for (int i = 0; i < outputs.length; i++) {
+                x = layers.get(i).infer(x, outputs[i]);
+            }
+            return x;
+        }
+
+        /**
+         * 本规划的缓冲区总大小（字节）
+         */
+        public long getBytes() {
+            return (long) arena.getCapacity() * Float.BYTES;
+        }
+    }
 
-        grad = flatten.backward(grad, learningRate);
+    private static int volume(int[] shape) {
+        return shape[0] * shape[1] * shape[2] * shape[3];
+    }
 
-        grad = pool5.backward(grad, learningRate);
-        grad = relu5.backward(grad, learningRate);
-        grad = conv5.backward(grad, learningRate);
+    private static Tensor view(TensorArena arena, int id, int[] shape) {
+        return arena.tensor(id, shape[0], shape[1], shape[2], shape[3]);
+    }
 
-        grad = relu4.backward(grad, learningRate);
-        grad = conv4.backward(grad, learningRate);
+    // 前向传播，input 为 [N][3][227][227]，输出 [N][1][1][类别数] 的概率
+    public Tensor forward(Tensor input) {
+        Tensor x = input;
+        for (Layer layer : layers) {
+            x = layer.forward(x);
+        }
+        return x;
+    }
 
-        grad = relu3.backward(grad, learningRate);
-        grad = conv3.backward(grad, learningRate);
+    // 反向传播，lossGrad 是最后的梯度（通常由CrossEntropyLoss给出）；只在各层累加梯度，不更新参数
+    public void backward(Tensor lossGrad) {
+        Tensor grad = lossGrad;
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            grad = layers.get(i).backward(grad);
+        }
+    }
 
-        grad = pool2.backward(grad, learningRate);
-        grad = relu2.backward(grad, learningRate);
-        grad = conv2.backward(grad, learningRate);
+    // 用累加的梯度更新所有层的参数，每个 mini-batch 调用一次
+    public void update(double learningRate) {
+        for (Layer layer : layers) {
+            layer.update(learningRate);
+        }
+    }
 
-        grad = pool1.backward(grad, learningRate);
-        grad = relu1.backward(grad, learningRate);
-        grad = conv1.backward(grad, learningRate);
+    // 反向传播并立即更新参数
+    public void backward(Tensor lossGrad, double learningRate) {
+        backward(lossGrad);
+        update(learningRate);
     }
 }
@@ -0,0 +1,235 @@
+package alexnet.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AlexNet 参数的二进制 checkpoint。所有数值均为小端序：
+ * <pre>
+ * int   magic = 'ANCK'
+ * int   version
+ * int   dtype            1 = float32
+ * int   entryCount
+ * entry[entryCount]:
+ *   int  layer           在 {@link AlexNet#getParameterLayers()} 中的序号
+ *   int  parameter       在该层 {@link ParameterLayer#getParameters()} 中的序号
+ *   int  rank
+ *   int  dims[rank]
+ *   long dataOffset      数据在文件中的起始位置，按 64 字节对齐
+ * 之后是各参数的连续 float 数据
+ * </pre>
+ * 保存时经一个可复用的直接缓冲区分块流式写出，先写临时文件再原子替换，不会留下写了一半的文件。
+ * 加载时用 {@link FileChannel#map} 映射各数据块，再整块拷贝进层的参数数组。
+ */
+public class Checkpoint {
+    public static final int MAGIC = 0x414E434B;     // "ANCK"
+    public static final int VERSION = 1;
+    public static final int DTYPE_FLOAT32 = 1;
+
+    private static final int ALIGN = 64;
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    /**
+     * 保存 net 当前的全部参数
+     */
+    public static void save(AlexNet net, Path path) throws IOException {
+        List<ParameterLayer> layers = net.getParameterLayers();
+        float[][][] parameters = new float[layers.size()][][];
+        int[][][] shapes = new int[layers.size()][][];
+        for (int i = 0; i < layers.size(); i++) {
+            parameters[i] = layers.get(i).getParameters();
+            shapes[i] = layers.get(i).getParameterShapes();
+        }
+        write(path, parameters, shapes);
+    }
+
+    /**
+     * 按层写出参数：parameters[layer][parameter] 为平铺数组，shapes 与之一一对应
+     */
+    public static void write(Path path, float[][][] parameters, int[][][] shapes) throws IOException {
+        int entries = 0;
+        int headerBytes = 16;
+        for (int l = 0; l < shapes.length; l++) {
+            for (int p = 0; p < shapes[l].length; p++) {
+                if (volume(shapes[l][p]) != parameters[l][p].length) {
+                    throw new IllegalArgumentException("参数 " + l + "/" + p + " 的形状 " + Arrays.toString(shapes[l][p])
+                            + " 与长度 " + parameters[l][p].length + " 不符");
+                }
+                entries++;
+                headerBytes += 12 + 4 * shapes[l][p].length + 8;
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(DTYPE_FLOAT32).putInt(entries);
+        long offset = align(headerBytes);
+        for (int l = 0; l < shapes.length; l++) {
+            for (int p = 0; p < shapes[l].length; p++) {
+                int[] dims = shapes[l][p];
+                header.putInt(l).putInt(p).putInt(dims.length);
+                for (int d : dims) header.putInt(d);
+                header.putLong(offset);
+                offset = align(offset + 4L * parameters[l][p].length);
+            }
+        }
+        header.flip();
+
+        Path dir = path.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, header);
+                ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                FloatBuffer floats = chunk.asFloatBuffer();
+                long position = headerBytes;
+                for (float[][] layer : parameters) {
+                    for (float[] data : layer) {
+                        position = pad(channel, chunk, position);
+                        for (int start = 0; start < data.length; start += CHUNK_BYTES / 4) {
+                            int count = Math.min(CHUNK_BYTES / 4, data.length - start);
+                            floats.clear();
+                            floats.put(data, start, count);
+                            chunk.clear().limit(count * 4);
+                            writeFully(channel, chunk);
+                        }
+                        position += 4L * data.length;
+                    }
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 从 checkpoint 创建网络，跳过随机初始化
+     */
+    public static AlexNet load(Path path) throws IOException {
+        AlexNet net = new AlexNet(false);
+        loadInto(net, path);
+        return net;
+    }
+
+    /**
+     * 把 checkpoint 中的参数拷贝进 net 现有的参数数组；文件中的层数与形状必须与网络完全一致
+     */
+    public static void loadInto(AlexNet net, Path path) throws IOException {
+        List<ParameterLayer> layers = net.getParameterLayers();
+        float[][][] targets = new float[layers.size()][][];
+        int[][][] shapes = new int[layers.size()][][];
+        for (int i = 0; i < layers.size(); i++) {
+            targets[i] = layers.get(i).getParameters();
+            shapes[i] = layers.get(i).getParameterShapes();
+        }
+        read(path, targets, shapes);
+        for (ParameterLayer layer : layers) {
+            layer.markWeightsChanged();
+        }
+    }
+
+    /**
+     * 把 checkpoint 读进给定数组：targets[layer][parameter] 的长度与 shapes 必须与文件完全一致
+     */
+    public static void read(Path path, float[][][] targets, int[][][] shapes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer fixed = readFully(channel, 0, 16);
+            if (fixed.getInt() != MAGIC) {
+                throw new IOException("不是 AlexNet checkpoint 文件: " + path);
+            }
+            int version = fixed.getInt();
+            if (version != VERSION) {
+                throw new IOException("不支持的 checkpoint 版本: " + version);
+            }
+            int dtype = fixed.getInt();
+            if (dtype != DTYPE_FLOAT32) {
+                throw new IOException("不支持的数据类型: " + dtype);
+            }
+            int entries = fixed.getInt();
+            int expected = 0;
+            for (float[][] layer : targets) {
+                expected += layer.length;
+            }
+            if (entries != expected) {
+                throw new IllegalArgumentException("checkpoint 有 " + entries + " 个参数，网络需要 " + expected + " 个");
+            }
+
+            long position = 16;
+            for (int e = 0; e < entries; e++) {
+                ByteBuffer entry = readFully(channel, position, 12);
+                int l = entry.getInt();
+                int p = entry.getInt();
+                int rank = entry.getInt();
+                if (l < 0 || l >= targets.length || p < 0 || p >= targets[l].length || rank < 0) {
+                    throw new IOException("checkpoint 头部损坏: 条目 " + e);
+                }
+                ByteBuffer rest = readFully(channel, position + 12, 4 * rank + 8);
+                int[] dims = new int[rank];
+                for (int d = 0; d < rank; d++) dims[d] = rest.getInt();
+                long dataOffset = rest.getLong();
+                position += 12 + 4 * rank + 8;
+
+                int[] shape = shapes[l][p];
+                if (!Arrays.equals(dims, shape)) {
+                    throw new IllegalArgumentException("第 " + l + " 个参数层的参数 " + p + " 形状不符: 文件 "
+                            + Arrays.toString(dims) + "，网络 " + Arrays.toString(shape));
+                }
+                float[] target = targets[l][p];
+                long bytes = 4L * target.length;
+                if (dataOffset < position || dataOffset + bytes > fileSize) {
+                    throw new IOException("checkpoint 数据越界: 条目 " + e);
+                }
+                channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, bytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(target);
+            }
+        }
+    }
+
+    private static long pad(FileChannel channel, ByteBuffer chunk, long position) throws IOException {
+        int padding = (int) (align(position) - position);
+        if (padding > 0) {
+            chunk.clear().limit(padding);
+            for (int i = 0; i < padding; i++) chunk.put(i, (byte) 0);
+            writeFully(channel, chunk);
+        }
+        return position + padding;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("checkpoint 文件被截断");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGN - 1) / ALIGN * ALIGN;
+    }
+
+    private static int volume(int[] shape) {
+        int v = 1;
+        for (int d : shape) v *= d;
+        return v;
+    }
+}
@@ -0,0 +1,177 @@
+package alexnet.network;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 训练中的异步 checkpoint：{@link #save} 在训练线程上把参数拷贝进预先分配的快照缓冲区（只是内存拷贝），
+ * 写文件交给后台线程，训练随即继续。
+ * <p>
+ * 快照缓冲区共 {@value #SNAPSHOTS} 份；后台还没写完、缓冲区都在用时本次保存直接跳过而不阻塞训练。
+ * 目录中只保留最近 keep 个 "prefix-步数.anck" 文件，更早的在新文件写完后删除。
+ */
+public class CheckpointWriter implements AutoCloseable {
+    private static final int SNAPSHOTS = 2;
+    private static final String SUFFIX = ".anck";
+
+    private final Path directory;
+    private final String prefix;
+    private final int keep;
+
+    private final ExecutorService writer;
+    private final BlockingQueue<float[][][]> freeSnapshots = new ArrayBlockingQueue<>(SNAPSHOTS);
+    private int allocatedSnapshots;
+    private final Deque<Path> written = new ArrayDeque<>();     // 仅由后台线程访问
+
+    private volatile IOException lastError;
+    private volatile int completed;
+    private volatile int skipped;
+
+    public CheckpointWriter(Path directory, String prefix, int keep) throws IOException {
+        if (keep < 1) {
+            throw new IllegalArgumentException("至少保留 1 个 checkpoint: " + keep);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.keep = keep;
+        Files.createDirectories(directory);
+        written.addAll(existing());
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 拍下 net 当前参数的快照并在后台写入 prefix-step.anck。须在两次参数更新之间调用。
+     *
+     * @return 是否已提交；上一批快照还没写完时返回 false
+     */
+    public boolean save(AlexNet net, long step) {
+        List<ParameterLayer> layers = net.getParameterLayers();
+        float[][][] snapshot = freeSnapshots.poll();
+        if (snapshot == null) {
+            if (allocatedSnapshots >= SNAPSHOTS) {
+                skipped++;
+                return false;
+            }
+            snapshot = allocate(layers);
+            allocatedSnapshots++;
+        }
+
+        int[][][] shapes = new int[layers.size()][][];
+        for (int l = 0; l < layers.size(); l++) {
+            float[][] params = layers.get(l).getParameters();
+            for (int p = 0; p < params.length; p++) {
+                System.arraycopy(params[p], 0, snapshot[l][p], 0, params[p].length);
+            }
+            shapes[l] = layers.get(l).getParameterShapes();
+        }
+
+        float[][][] data = snapshot;
+        Path path = directory.resolve(prefix + "-" + step + SUFFIX);
+        writer.execute(() -> {
+            try {
+                Checkpoint.write(path, data, shapes);
+                written.remove(path);
+                written.addLast(path);
+                while (written.size() > keep) {
+                    Files.deleteIfExists(written.removeFirst());
+                }
+                completed++;
+            } catch (IOException e) {
+                lastError = e;
+                System.err.println("写入 checkpoint 失败: " + path + ": " + e.getMessage());
+            } finally {
+                freeSnapshots.offer(data);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 目录中保留的最近一个 checkpoint，没有时返回 null
+     */
+    public Path latest() throws IOException {
+        List<Path> files = existing();
+        return files.isEmpty() ? null : files.get(files.size() - 1);
+    }
+
+    public int getCompleted() {
+        return completed;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * 等待已提交的快照全部写完；期间出现过写入错误时抛出最后一个
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (lastError != null) {
+            throw lastError;
+        }
+    }
+
+    private static float[][][] allocate(List<ParameterLayer> layers) {
+        float[][][] snapshot = new float[layers.size()][][];
+        for (int l = 0; l < layers.size(); l++) {
+            float[][] params = layers.get(l).getParameters();
+            snapshot[l] = new float[params.length][];
+            for (int p = 0; p < params.length; p++) {
+                snapshot[l][p] = new float[params[p].length];
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 目录中已有的本前缀 checkpoint，按步数从小到大排序
+     */
+    private List<Path> existing() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "-*" + SUFFIX)) {
+            for (Path file : stream) {
+                if (stepOf(file) >= 0) files.add(file);
+            }
+        }
+        files.sort((a, b) -> Long.compare(stepOf(a), stepOf(b)));
+        return files;
+    }
+
+    /**
+     * 从 "prefix-步数.anck" 文件名中解析步数，不符合命名时返回 -1
+     */
+    public long stepOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(prefix.length() + 1, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+}
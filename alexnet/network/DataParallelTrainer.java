@@ -0,0 +1,215 @@
+package alexnet.network;
+
+import alexnet.core.Parallel;
+import alexnet.core.Tensor;
+import alexnet.loss.CrossEntropyLoss;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 进程内数据并行训练：N 个 AlexNet 副本共享同一份权重，各自持有激活缓冲区与梯度累加器。
+ * 每一步把 batch 按样本切成 N 段，各副本在共享线程池上并行做前向与反向，梯度写进各自的累加器；
+ * 随后按二叉树两两归约到副本 0，只由副本 0 更新一次参数，其余副本的累加器在归约时顺带清零。
+ * <p>
+ * 切分只取决于 batch 大小与副本数，树归约的加法顺序固定，卷积与全连接的并行循环也按固定区间切分，
+ * 因此副本数不变时结果逐位可复现（与单副本训练只差浮点加法顺序）。
+ * 每个副本的梯度累加器与参数一样大（约 240MB），副本数按内存与核数取舍。
+ */
+public class DataParallelTrainer {
+    private static final int REDUCE_GRAIN = 1 << 16;
+
+    private final AlexNet[] replicas;
+    private final CrossEntropyLoss[] losses;
+    private final float[] sliceLosses;
+    private int[] predictions = new int[0];
+    private GradientSync sync;
+
+    /**
+     * @param model    副本 0，其参数即训练结果
+     * @param replicas 副本数
+     */
+    public DataParallelTrainer(AlexNet model, int replicas) {
+        if (replicas < 1) {
+            throw new IllegalArgumentException("副本数必须为正: " + replicas);
+        }
+        this.replicas = new AlexNet[replicas];
+        this.losses = new CrossEntropyLoss[replicas];
+        this.sliceLosses = new float[replicas];
+        this.replicas[0] = model;
+        for (int r = 1; r < replicas; r++) {
+            AlexNet replica = new AlexNet(false);
+            replica.shareParameters(model);
+            this.replicas[r] = replica;
+        }
+        for (int r = 0; r < replicas; r++) {
+            losses[r] = new CrossEntropyLoss();
+        }
+    }
+
+    public int getReplicaCount() {
+        return replicas.length;
+    }
+
+    public AlexNet getModel() {
+        return replicas[0];
+    }
+
+    /**
+     * 设置跨进程的梯度同步：每步在本进程内归约之后、更新之前调用，null 表示只在本进程内训练
+     */
+    public void setGradientSync(GradientSync sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * 按 batch 大小为每个副本规划各自那一段的缓冲区
+     */
+    public void planBuffers(int batch, int channels, int height, int width) {
+        for (int r = 0; r < replicas.length; r++) {
+            int n = sliceEnd(batch, r) - sliceStart(batch, r);
+            if (n > 0) {
+                replicas[r].planBuffers(n, channels, height, width);
+            }
+        }
+    }
+
+    /**
+     * 所有副本 planBuffers 规划出的缓冲区总大小（字节）
+     */
+    public long getPlannedBytes() {
+        long total = 0;
+        for (AlexNet replica : replicas) {
+            total += replica.getPlannedBytes();
+        }
+        return total;
+    }
+
+    /**
+     * 一次训练迭代：并行前向与反向、归约梯度、更新一次参数
+     *
+     * @param input  [N][C][H][W]
+     * @param target one-hot 标签 [N][1][1][类别数]
+     * @return 整个 batch 的平均损失
+     */
+    public float step(Tensor input, Tensor target, double learningRate) {
+        int batch = input.getBatch();
+        if (target.getBatch() != batch) {
+            throw new IllegalArgumentException("输入与标签的 batch 不一致: " + batch + " != " + target.getBatch());
+        }
+        if (predictions.length != batch) {
+            predictions = new int[batch];
+        }
+
+        // 每个副本一个任务；卷积与全连接内部的并行循环在同一个线程池里分摊，不会超额占用线程
+        int active = Math.min(replicas.length, batch);
+        Parallel.forRange(active, 1, (first, end) -> {
+            for (int r = first; r < end; r++) {
+                forwardBackward(r, input, target, batch);
+            }
+        });
+
+        float loss = 0;
+        for (int r = 0; r < active; r++) {
+            loss += sliceLosses[r];
+        }
+        reduceGradients(active);
+        if (sync != null) {
+            List<float[]> gradients = new ArrayList<>();
+            for (ParameterLayer layer : replicas[0].getParameterLayers()) {
+                Collections.addAll(gradients, layer.getGradients());
+            }
+            sync.synchronize(gradients.toArray(new float[0][]));
+        }
+        replicas[0].update(learningRate);
+        // 权重数组是共享的，副本 0 的更新其他副本也看得到，但它们的卷积引擎缓存要失效
+        for (int r = 1; r < replicas.length; r++) {
+            for (ParameterLayer layer : replicas[r].getParameterLayers()) {
+                layer.markWeightsChanged();
+            }
+        }
+        return loss;
+    }
+
+    /**
+     * 最近一次 step 中每个样本的预测类别
+     */
+    public int[] getPredictions() {
+        return predictions;
+    }
+
+    private void forwardBackward(int r, Tensor input, Tensor target, int batch) {
+        int start = sliceStart(batch, r);
+        int n = sliceEnd(batch, r) - start;
+        AlexNet net = replicas[r];
+        CrossEntropyLoss lossFn = losses[r];
+        Tensor x = input.slice(start, n);
+        Tensor t = target.slice(start, n);
+
+        Tensor output = net.forward(x);
+        // 损失与梯度按各段自己的 n 取平均，乘 n/N 后各段之和才是整个 batch 的平均
+        float weight = (float) n / batch;
+        sliceLosses[r] = lossFn.forward(output, t) * weight;
+        for (int i = 0; i < n; i++) {
+            predictions[start + i] = argMax(output, i);
+        }
+        Tensor grad = lossFn.backward(output, t);
+        float[] g = grad.getBuffer();
+        for (int i = grad.getOffset(), e = i + grad.size(); i < e; i++) {
+            g[i] *= weight;
+        }
+        net.backward(grad);
+    }
+
+    /**
+     * 按二叉树把各副本的梯度加到副本 0：第 k 层把副本 i + 2^k 加到副本 i（i 为 2^(k+1) 的倍数）。
+     * 按元素区间切块并行，每块内依次走完所有层，同一元素的加法顺序固定
+     */
+    private void reduceGradients(int active) {
+        if (active <= 1) return;
+        List<ParameterLayer> layers = replicas[0].getParameterLayers();
+        for (int l = 0; l < layers.size(); l++) {
+            float[][][] grads = new float[active][][];
+            for (int r = 0; r < active; r++) {
+                grads[r] = replicas[r].getParameterLayers().get(l).getGradients();
+            }
+            for (int p = 0; p < grads[0].length; p++) {
+                int param = p;
+                Parallel.forRange(grads[0][p].length, REDUCE_GRAIN, (start, end) -> {
+                    for (int stride = 1; stride < active; stride *= 2) {
+                        for (int i = 0; i + stride < active; i += 2 * stride) {
+                            float[] dst = grads[i][param];
+                            float[] src = grads[i + stride][param];
+                            for (int k = start; k < end; k++) {
+                                dst[k] += src[k];
+                                src[k] = 0;
+                            }
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    // 前 batch % R 个副本各多分一个样本
+    private int sliceStart(int batch, int r) {
+        int base = batch / replicas.length;
+        int extra = batch % replicas.length;
+        return r * base + Math.min(r, extra);
+    }
+
+    private int sliceEnd(int batch, int r) {
+        return sliceStart(batch, r + 1);
+    }
+
+    private static int argMax(Tensor output, int n) {
+        float[] flat = output.getBuffer();
+        int base = output.index(n, 0, 0, 0);
+        int best = 0;
+        for (int i = 1; i < output.sampleSize(); i++) {
+            if (flat[base + i] > flat[base + best]) best = i;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,13 @@
+package alexnet.network;
+
+/**
+ * 跨进程的梯度同步。{@link DataParallelTrainer} 每一步在本进程内归约完梯度、更新参数之前调用，
+ * 实现应把各进程的梯度原地替换为全体进程的平均值，使所有进程执行完全相同的更新。
+ */
+public interface GradientSync {
+    /**
+     * @param gradients 各参数层的梯度累加器，按 {@link AlexNet#getParameterLayers()} 的顺序、每层权重在前偏置在后
+     * @throws java.io.UncheckedIOException 通信失败或超时
+     */
+    void synchronize(float[][] gradients);
+}
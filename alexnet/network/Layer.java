@@ -4,16 +4,60 @@ import alexnet.core.Tensor;
 
 public interface Layer {
     /**
-     * 前向传播：输入张量 -> 输出张量
+     * 前向传播：输入张量 [N][C][H][W] -> 输出张量 [N][C'][H'][W']
      */
     Tensor forward(Tensor input);
 
     /**
-     * 反向传播：从下一层来的梯度，更新本层权重并返回对前一层的梯度
+     * 反向传播：返回对前一层的梯度，并把本层参数的梯度在整个 mini-batch 上累加（不更新参数）
      *
-     * @param gradOutput 从下一层来的梯度
-     * @param learningRate 学习率（用于参数更新）
+     * @param gradOutput 从下一层来的梯度，形状与 forward 的输出相同
      * @return 输入层的梯度（传给前一层）
      */
-    Tensor backward(Tensor gradOutput, double learningRate);
+    Tensor backward(Tensor gradOutput);
+
+    /**
+     * 只做推理的前向：结果写入 output，不保留任何反向传播所需的状态（输入缓存、池化的最大值位置等）。
+     * output 的形状须等于 {@link #outputShape}；只返回视图的层忽略 output。
+     * 默认退回 {@link #forward}，仍会缓存反向所需的状态。
+     *
+     * @return 本层输出，通常就是 output
+     */
+    default Tensor infer(Tensor input, Tensor output) {
+        return forward(input);
+    }
+
+    /**
+     * 由输入形状推断输出形状，用于在运行前规划缓冲区
+     *
+     * @param inputShape {N, C, H, W}
+     * @return 输出的 {N, C', H', W'}
+     */
+    int[] outputShape(int[] inputShape);
+
+    /**
+     * 绑定预先规划好的输出与输入梯度缓冲区，之后每次 forward / backward 直接覆盖写入它们而不再分配；
+     * 实际形状与缓冲区不符时层退回临时分配。不需要缓冲区的层可以忽略。
+     *
+     * @param output    forward 的输出缓冲区
+     * @param gradInput backward 返回的输入梯度缓冲区
+     */
+    default void bindBuffers(Tensor output, Tensor gradInput) {
+    }
+
+    /**
+     * forward 与 backward 是否只返回参数张量的视图（共享存储，如 Flatten 的 reshape）。
+     * 这样的层不需要自己的缓冲区，但被它转手的缓冲区要存活到下一个真正读取它的层用完为止。
+     */
+    default boolean returnsView() {
+        return false;
+    }
+
+    /**
+     * 用累加的梯度更新参数并清零梯度，每个 mini-batch 调用一次；无参数的层什么也不做
+     *
+     * @param learningRate 学习率
+     */
+    default void update(double learningRate) {
+    }
 }
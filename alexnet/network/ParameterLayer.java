@@ -0,0 +1,33 @@
+package alexnet.network;
+
+/**
+ * 带可训练参数的层。参数按固定顺序（权重在前、偏置在后）以平铺 float[] 暴露，供保存、加载与共享权重使用。
+ */
+public interface ParameterLayer extends Layer {
+    /**
+     * 参数数组本身（不拷贝），顺序与 {@link #getParameterShapes()} 一致
+     */
+    float[][] getParameters();
+
+    /**
+     * 每个参数数组的逻辑形状，各维乘积等于对应数组的长度
+     */
+    int[][] getParameterShapes();
+
+    /**
+     * 改用给定的数组作为参数（直接引用，不拷贝），用于多个副本共享同一份权重；数组个数与长度必须与当前参数一致。
+     * 梯度累加器仍归本层所有。
+     */
+    void setParameters(float[][] parameters);
+
+    /**
+     * 梯度累加器（不拷贝，必要时先分配），与 {@link #getParameters()} 一一对应；update 用它更新参数后清零
+     */
+    float[][] getGradients();
+
+    /**
+     * 在 update 之外直接改写了参数数组后调用，使依赖权重的缓存失效
+     */
+    default void markWeightsChanged() {
+    }
+}
@@ -0,0 +1,486 @@
+package alexnet.network;
+
+import alexnet.core.Tensor;
+import alexnet.core.TensorArena;
+import alexnet.loss.CrossEntropyLoss;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流水线并行：把 AlexNet 按层切成若干段，每段固定在一个线程上，micro-batch 依次流过各段，
+ * 不同的 micro-batch 同时处在不同的段上。默认三段：conv1~pool2、conv3~pool5、flatten~softmax。
+ * 各段直接使用模型自己的层对象（段与段之间不重叠），只为本段的层规划激活缓冲区，不复制参数；
+ * 段内各层仍用共享线程池做层内并行。流水线使用期间不要再直接对模型调用 forward、infer 或 planBuffers。
+ * <p>
+ * 训练按 GPipe 的同步方式：一个 batch 切成 M 个 micro-batch 全部流过前向与反向后（flush），
+ * 各段再各自更新本段的参数，因此同一步里所有 micro-batch 看到的是同一版本的权重，结果与不切分时只差浮点加法顺序。
+ * 段间只保存各 micro-batch 在段边界处的激活；段内反向所需的中间状态在反向前按边界激活重算一遍本段前向
+ * （re-materialization），刚做完前向的那个 micro-batch 不必重算。
+ * <p>
+ * 推理请求用 {@link #submit} 流式提交，各段处理完一个请求立刻交给下一段，吞吐量受最慢的一段限制。
+ * 每段的前向输入队列有界，上游满了会阻塞；反向与控制消息不受限，避免相邻两段互相等待造成死锁。
+ * {@link #close} 之后尚未完成的推理结果与训练步都以异常结束，不会让等待方一直阻塞。
+ */
+public class PipelinedAlexNet implements AutoCloseable {
+    public static final int[] DEFAULT_BOUNDARIES = {6, 13};
+
+    private final AlexNet model;
+    private final Stage[] stages;
+    private final CrossEntropyLoss lossFn = new CrossEntropyLoss();
+    private int[] predictions = new int[0];
+    private int[] inferenceShape;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+    // 尚未完成的推理结果与训练步，close 时统一以异常结束
+    private final Set<CompletableFuture<?>> outstanding = ConcurrentHashMap.newKeySet();
+
+    // 段边界上各 micro-batch 的激活与梯度，[段][micro-batch]，跨步复用
+    private Tensor[][] boundaryInputs = new Tensor[0][];
+    private Tensor[][] boundaryGrads = new Tensor[0][];
+
+    /**
+     * 当前训练步的状态，只在各段线程与调用 step 的线程之间传递
+     */
+    private static final class StepState {
+        final Tensor input;
+        final Tensor target;
+        final int[] starts;
+        final float[] losses;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        int finished;   // 只由第 0 段线程修改
+
+        StepState(Tensor input, Tensor target, int[] starts) {
+            this.input = input;
+            this.target = target;
+            this.starts = starts;
+            this.losses = new float[starts.length - 1];
+        }
+    }
+
+    /**
+     * @param model         被切分的网络，各段分别持有它的一段层
+     * @param queueCapacity 每段最多排队多少个前向 micro-batch
+     * @param boundaries    各段的起始层下标（不含第 0 段），严格递增
+     */
+    public PipelinedAlexNet(AlexNet model, int queueCapacity, int... boundaries) {
+        int layerCount = model.getLayers().size();
+        for (int i = 0; i < boundaries.length; i++) {
+            if (boundaries[i] <= (i == 0 ? 0 : boundaries[i - 1]) || boundaries[i] >= layerCount) {
+                throw new IllegalArgumentException("段边界必须在 (0, " + layerCount + ") 内严格递增: "
+                        + Arrays.toString(boundaries));
+            }
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("队列容量必须为正: " + queueCapacity);
+        }
+        this.model = model;
+        this.stages = new Stage[boundaries.length + 1];
+        for (int s = 0; s < stages.length; s++) {
+            int from = s == 0 ? 0 : boundaries[s - 1];
+            int to = s == boundaries.length ? layerCount : boundaries[s];
+            stages[s] = new Stage(s, from, to, queueCapacity);
+        }
+        for (Stage stage : stages) {
+            stage.thread.start();
+        }
+    }
+
+    public PipelinedAlexNet(AlexNet model, int queueCapacity) {
+        this(model, queueCapacity, DEFAULT_BOUNDARIES);
+    }
+
+    public int getStageCount() {
+        return stages.length;
+    }
+
+    /**
+     * 按 micro-batch 大小为各段规划训练缓冲区，每段只规划自己那几层，输入形状取段边界处的激活形状
+     */
+    public void planBuffers(int microBatch, int channels, int height, int width) {
+        int[] shape = {microBatch, channels, height, width};
+        for (Stage stage : stages) {
+            stage.arena = model.planBuffers(stage.from, stage.to, shape);
+            shape = stage.outputShape(shape);
+        }
+    }
+
+    /**
+     * 为不超过 maxBatch 的推理请求规划各段的缓冲区，{@link #submit} 之前必须调用
+     */
+    public void planInference(int maxBatch, int channels, int height, int width) {
+        int[] shape = {maxBatch, channels, height, width};
+        for (Stage stage : stages) {
+            stage.inference = model.planInference(stage.from, stage.to, shape);
+            shape = stage.outputShape(shape);
+        }
+        inferenceShape = new int[]{maxBatch, channels, height, width};
+    }
+
+    /**
+     * 各段训练缓冲区的总大小（字节），未规划时为 0
+     */
+    public long getPlannedBytes() {
+        long total = 0;
+        for (Stage stage : stages) {
+            if (stage.arena != null) {
+                total += (long) stage.arena.getCapacity() * Float.BYTES;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 各段推理缓冲区的总大小（字节），未规划时为 0
+     */
+    public long getInferenceBytes() {
+        long total = 0;
+        for (Stage stage : stages) {
+            if (stage.inference != null) {
+                total += stage.inference.getBytes();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 一次 GPipe 训练迭代：batch 切成 microBatches 段流过流水线，全部反向结束后各段更新本段参数
+     *
+     * @param input  [N][C][H][W]，返回前不得修改
+     * @param target one-hot 标签 [N][1][1][类别数]
+     * @return 整个 batch 的平均损失
+     */
+    public float step(Tensor input, Tensor target, int microBatches, double learningRate) {
+        checkHealthy();
+        int batch = input.getBatch();
+        if (target.getBatch() != batch) {
+            throw new IllegalArgumentException("输入与标签的 batch 不一致: " + batch + " != " + target.getBatch());
+        }
+        if (microBatches < 1) {
+            throw new IllegalArgumentException("micro-batch 数必须为正: " + microBatches);
+        }
+        int m = Math.min(microBatches, batch);
+        if (predictions.length != batch) {
+            predictions = new int[batch];
+        }
+        if (boundaryInputs.length != stages.length || boundaryInputs[0].length < m) {
+            boundaryInputs = new Tensor[stages.length][m];
+            boundaryGrads = new Tensor[stages.length][m];
+        }
+        // 前 batch % m 个 micro-batch 各多分一个样本
+        int[] starts = new int[m + 1];
+        for (int i = 0; i <= m; i++) {
+            starts[i] = i * (batch / m) + Math.min(i, batch % m);
+        }
+
+        StepState state = new StepState(input, target, starts);
+        track(state.done);
+        for (int i = 0; i < m; i++) {
+            int micro = i;
+            stages[0].sendForward(() -> forward(state, 0, micro));
+        }
+        await(state.done);
+
+        // flush 之后各段在自己的线程上更新本段参数
+        CompletableFuture<Void> updated = track(new CompletableFuture<>());
+        AtomicInteger remaining = new AtomicInteger(stages.length);
+        for (Stage stage : stages) {
+            stage.send(() -> {
+                try {
+                    stage.update(learningRate);
+                    if (remaining.decrementAndGet() == 0) {
+                        updated.complete(null);
+                    }
+                } catch (Throwable t) {
+                    failure = t;
+                    updated.completeExceptionally(new IllegalStateException("参数更新失败", t));
+                }
+            });
+        }
+        await(updated);
+
+        float loss = 0;
+        for (float l : state.losses) {
+            loss += l;
+        }
+        return loss;
+    }
+
+    /**
+     * 最近一次 step 中每个样本的预测类别
+     */
+    public int[] getPredictions() {
+        return predictions;
+    }
+
+    /**
+     * 流式提交一个推理请求，结果为最后一段输出（概率）的拷贝。input 在结果就绪前不得修改；
+     * 第 0 段的队列满时阻塞
+     */
+    public CompletableFuture<Tensor> submit(Tensor input) {
+        checkHealthy();
+        if (inferenceShape == null || input.getBatch() > inferenceShape[0] || input.getChannels() != inferenceShape[1]
+                || input.getHeight() != inferenceShape[2] || input.getWidth() != inferenceShape[3]) {
+            throw new IllegalArgumentException("输入 " + input.getShapeString() + " 超出 planInference 规划的形状");
+        }
+        CompletableFuture<Tensor> result = track(new CompletableFuture<>());
+        stages[0].sendForward(() -> infer(0, input, result));
+        return result;
+    }
+
+    private void forward(StepState state, int s, int micro) {
+        if (state.done.isDone()) return;
+        Stage stage = stages[s];
+        try {
+            Tensor x = s == 0 ? microSlice(state.input, state, micro) : boundaryInputs[s][micro];
+            Tensor y = stage.forward(x, micro);
+            if (s < stages.length - 1) {
+                boundaryInputs[s + 1][micro] = copyInto(y, boundaryInputs[s + 1][micro]);
+                stages[s + 1].sendForward(() -> forward(state, s + 1, micro));
+                return;
+            }
+
+            // 最后一段：求损失并立即反向，刚做完的前向状态还在，不必重算
+            int start = state.starts[micro];
+            int n = state.starts[micro + 1] - start;
+            Tensor t = state.target.slice(start, n);
+            float weight = (float) n / state.input.getBatch();
+            state.losses[micro] = lossFn.forward(y, t) * weight;
+            for (int i = 0; i < n; i++) {
+                predictions[start + i] = argMax(y, i);
+            }
+            Tensor grad = lossFn.backward(y, t);
+            float[] g = grad.getBuffer();
+            for (int i = grad.getOffset(), e = i + grad.size(); i < e; i++) {
+                g[i] *= weight;
+            }
+            backward(state, s, micro, grad);
+        } catch (Throwable e) {
+            fail(state, e);
+        }
+    }
+
+    private void backward(StepState state, int s, int micro, Tensor gradOutput) {
+        if (state.done.isDone()) return;
+        Stage stage = stages[s];
+        try {
+            Tensor x = s == 0 ? microSlice(state.input, state, micro) : boundaryInputs[s][micro];
+            Tensor gradInput = stage.backward(x, gradOutput, micro);
+            if (s == 0) {
+                if (++state.finished == state.losses.length) {
+                    state.done.complete(null);
+                }
+                return;
+            }
+            boundaryGrads[s - 1][micro] = copyInto(gradInput, boundaryGrads[s - 1][micro]);
+            Tensor grad = boundaryGrads[s - 1][micro];
+            stages[s - 1].send(() -> backward(state, s - 1, micro, grad));
+        } catch (Throwable e) {
+            fail(state, e);
+        }
+    }
+
+    private void infer(int s, Tensor x, CompletableFuture<Tensor> result) {
+        if (result.isDone()) return;
+        try {
+            // 推理输出位于本段的缓冲区，下一个请求会覆盖，交给下一段前先拷贝
+            Tensor y = stages[s].infer(x).copy();
+            if (s < stages.length - 1) {
+                stages[s + 1].sendForward(() -> infer(s + 1, y, result));
+            } else {
+                result.complete(y);
+            }
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    // 登记一个等待中的结果，完成后自动移除；已经关闭时直接以异常结束
+    private <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        outstanding.add(future);
+        future.whenComplete((value, error) -> outstanding.remove(future));
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("流水线已关闭"));
+        }
+        return future;
+    }
+
+    private void fail(StepState state, Throwable e) {
+        failure = e;
+        state.done.completeExceptionally(e);
+    }
+
+    private static Tensor microSlice(Tensor input, StepState state, int micro) {
+        int start = state.starts[micro];
+        return input.slice(start, state.starts[micro + 1] - start);
+    }
+
+    private static Tensor copyInto(Tensor src, Tensor dst) {
+        Tensor out = Tensor.reuse(dst, src.getBatch(), src.getChannels(), src.getHeight(), src.getWidth());
+        System.arraycopy(src.getBuffer(), src.getOffset(), out.getBuffer(), out.getOffset(), src.size());
+        return out;
+    }
+
+    private static void await(CompletableFuture<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待流水线时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void checkHealthy() {
+        if (closed) {
+            throw new IllegalStateException("流水线已关闭");
+        }
+        if (failure != null) {
+            throw new IllegalStateException("流水线已因错误停止", failure);
+        }
+    }
+
+    private static int argMax(Tensor output, int n) {
+        float[] flat = output.getBuffer();
+        int base = output.index(n, 0, 0, 0);
+        int best = 0;
+        for (int i = 1; i < output.sampleSize(); i++) {
+            if (flat[base + i] > flat[base + best]) best = i;
+        }
+        return best;
+    }
+
+    /**
+     * 停止各段线程。排队中和正在执行的推理请求、训练步都以 IllegalStateException 结束，
+     * 阻塞在前向队列上的提交方被唤醒后同样失败
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (Stage stage : stages) {
+            stage.thread.interrupt();
+            // 唤醒阻塞在前向队列上的发送方，它们醒来后看到 closed 即放弃
+            stage.forwardSlots.release(Integer.MAX_VALUE / 2);
+        }
+        try {
+            for (Stage stage : stages) {
+                stage.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IllegalStateException error = new IllegalStateException("流水线已关闭");
+        for (CompletableFuture<?> future : outstanding) {
+            future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * 流水线的一段：第 [from, to) 层，在自己的线程上按到达顺序执行任务
+     */
+    private final class Stage {
+        final int index;
+        final int from;
+        final int to;
+        final List<Layer> layers;
+        TensorArena arena;                  // 本段的训练缓冲区，只在调用方线程上规划
+        AlexNet.InferencePlan inference;    // 本段的推理缓冲区
+        final LinkedBlockingQueue<Runnable> inbox = new LinkedBlockingQueue<>();
+        final Semaphore forwardSlots;
+        final Thread thread;
+        int cachedMicro = -1;   // 层内缓存的前向状态属于哪个 micro-batch，-1 表示无效
+
+        Stage(int index, int from, int to, int queueCapacity) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+            this.layers = new ArrayList<>(model.getLayers().subList(from, to));
+            this.forwardSlots = new Semaphore(queueCapacity);
+            this.thread = new Thread(this::run, "pipeline-stage-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        // 前向任务占用一个队列名额，队列满时阻塞发送方
+        void sendForward(Runnable task) {
+            try {
+                forwardSlots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待流水线第 " + index + " 段的队列时被中断", e);
+            }
+            if (closed) {
+                throw new IllegalStateException("流水线已关闭");
+            }
+            inbox.add(() -> {
+                forwardSlots.release();
+                task.run();
+            });
+        }
+
+        void send(Runnable task) {
+            inbox.add(task);
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    inbox.take().run();
+                }
+            } catch (InterruptedException e) {
+                // close
+            }
+        }
+
+        Tensor forward(Tensor x, int micro) {
+            for (Layer layer : layers) {
+                x = layer.forward(x);
+            }
+            cachedMicro = micro;
+            return x;
+        }
+
+        Tensor backward(Tensor input, Tensor grad, int micro) {
+            if (cachedMicro != micro) {
+                forward(input, micro);
+            }
+            for (int i = layers.size() - 1; i >= 0; i--) {
+                grad = layers.get(i).backward(grad);
+            }
+            // 规划的梯度缓冲区与激活共用存储，反向之后前向状态不再可用
+            cachedMicro = -1;
+            return grad;
+        }
+
+        Tensor infer(Tensor x) {
+            // 没有专门推理实现的层会退回 forward，覆盖训练时缓存的状态
+            cachedMicro = -1;
+            return inference.run(x);
+        }
+
+        void update(double learningRate) {
+            for (Layer layer : layers) {
+                layer.update(learningRate);
+            }
+        }
+
+        int[] outputShape(int[] shape) {
+            for (Layer layer : layers) {
+                shape = layer.outputShape(shape);
+            }
+            return shape;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package alexnet.serving;
+
+import alexnet.core.Tensor;
+import alexnet.network.AlexNet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 动态批处理：请求先进入有界队列，每个工作线程取到第一个请求后继续收集，
+ * 直到凑满 maxBatch 或第一个请求已等待 maxWaitMillis，然后对这一组只做一次批量推理。
+ * 批越大，fc6/fc7 的权重读取越能摊薄到多个样本上，代价是排队延迟；两个参数显式地在二者之间取舍。
+ * <p>
+ * 每个工作线程持有一个 AlexNet 副本，激活缓冲区与卷积工作区各自独立；参数来自 {@link WeightStore}，
+ * 每批开始时获取当前权重并绑定到副本上，算完释放，因此可以随时 {@link #swapWeights} 而不中断服务。
+ */
+public class DynamicBatcher implements AutoCloseable {
+    private final int maxBatch;
+    private final long maxWaitNanos;
+    private final int channels;
+    private final int height;
+    private final int width;
+
+    private final AlexNet template;
+    private final WeightStore weights;
+    private final BlockingQueue<Request> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private final LatencyRecorder latency = new LatencyRecorder(10000);
+    private volatile boolean running = true;
+
+    /**
+     * 单个请求的预测结果
+     */
+    public static class Prediction {
+        public final int label;
+        public final float probability;
+        public final int batchSize;     // 该请求所在批的大小
+
+        Prediction(int label, float probability, int batchSize) {
+            this.label = label;
+            this.probability = probability;
+            this.batchSize = batchSize;
+        }
+    }
+
+    private static class Request {
+        final Tensor image;
+        final long arrivalNanos = System.nanoTime();
+        final CompletableFuture<Prediction> result = new CompletableFuture<>();
+
+        Request(Tensor image) {
+            this.image = image;
+        }
+    }
+
+    /**
+     * @param model        初始权重所在的模型，第一个工作线程直接使用它，其余线程使用副本；之后不应再训练它
+     * @param workerCount  工作线程数
+     * @param maxBatch     每批最多多少个请求
+     * @param maxWaitMillis 一批中第一个请求最多等待多久
+     * @param queueCapacity 排队请求上限，超出时 submit 直接拒绝
+     */
+    public DynamicBatcher(AlexNet model, int workerCount, int maxBatch, long maxWaitMillis, int queueCapacity,
+                          int channels, int height, int width) {
+        if (workerCount < 1 || maxBatch < 1 || maxWaitMillis < 0 || queueCapacity < 1) {
+            throw new IllegalArgumentException("非法的批处理参数: workers=" + workerCount + ", maxBatch=" + maxBatch
+                    + ", maxWait=" + maxWaitMillis + ", queue=" + queueCapacity);
+        }
+        this.maxBatch = maxBatch;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.channels = channels;
+        this.height = height;
+        this.width = width;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.template = model;
+        this.weights = new WeightStore(WeightSet.of(model, "initial"));
+
+        for (int i = 0; i < workerCount; i++) {
+            AlexNet replica = model;
+            if (i > 0) {
+                replica = new AlexNet(false);
+                replica.shareParameters(model);
+            }
+            replica.planInference(maxBatch, channels, height, width);
+            AlexNet net = replica;
+            Thread t = new Thread(() -> work(net), "inference-worker-" + i);
+            t.setDaemon(true);
+            workers.add(t);
+        }
+        for (Thread t : workers) {
+            t.start();
+        }
+    }
+
+    /**
+     * 提交一张 [1][C][H][W] 图像
+     *
+     * @throws IllegalStateException 队列已满或已关闭
+     */
+    public CompletableFuture<Prediction> submit(Tensor image) {
+        if (image.getBatch() != 1 || image.getChannels() != channels
+                || image.getHeight() != height || image.getWidth() != width) {
+            throw new IllegalArgumentException("输入形状应为 [1][" + channels + "][" + height + "][" + width
+                    + "]，实际为 " + image.getShapeString());
+        }
+        if (!running) {
+            throw new IllegalStateException("推理服务已关闭");
+        }
+        Request request = new Request(image);
+        if (!queue.offer(request)) {
+            throw new IllegalStateException("请求队列已满");
+        }
+        return request.result;
+    }
+
+    /**
+     * 原子地换上新权重：之后开始的批使用 next，正在计算的批用旧权重算完
+     *
+     * @return 被换下的权重
+     */
+    public WeightSet swapWeights(WeightSet next) {
+        return weights.swap(next);
+    }
+
+    /**
+     * 把 checkpoint 读进一份新的权重并换上；读取在调用线程上进行，不影响正在服务的请求
+     */
+    public WeightSet reload(Path checkpoint) throws IOException {
+        WeightSet next = WeightSet.load(checkpoint, template);
+        swapWeights(next);
+        return next;
+    }
+
+    public WeightSet currentWeights() {
+        return weights.current();
+    }
+
+    public LatencyRecorder.Summary latency() {
+        return latency.summary();
+    }
+
+    private void work(AlexNet net) {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        Tensor inputs = new Tensor(maxBatch, channels, height, width);
+        int sampleSize = inputs.sampleSize();
+        WeightSet bound = null;
+
+        while (running) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                long deadline = first.arrivalNanos + maxWaitNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    // 已到期时仍把队列里现成的请求带上，但不再等待
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            int n = batch.size();
+            WeightSet set = weights.acquire();
+            try {
+                if (set != bound) {
+                    set.bind(net);
+                    bound = set;
+                }
+                Tensor input = inputs.slice(0, n);
+                float[] in = input.getBuffer();
+                for (int i = 0; i < n; i++) {
+                    Tensor image = batch.get(i).image;
+                    System.arraycopy(image.getBuffer(), image.getOffset(), in, input.index(i, 0, 0, 0), sampleSize);
+                }
+                Tensor output = net.infer(input);
+                latency.recordBatch(n);
+                for (int i = 0; i < n; i++) {
+                    Request request = batch.get(i);
+                    request.result.complete(top1(output, i, n));
+                    latency.record(System.nanoTime() - request.arrivalNanos);
+                }
+            } catch (RuntimeException e) {
+                for (Request request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+            } finally {
+                set.release();
+            }
+            batch.clear();
+        }
+        for (Request request : batch) {
+            request.result.cancel(false);
+        }
+    }
+
+    private static Prediction top1(Tensor output, int n, int batchSize) {
+        float[] probs = output.getBuffer();
+        int base = output.index(n, 0, 0, 0);
+        int best = 0;
+        for (int i = 1; i < output.sampleSize(); i++) {
+            if (probs[base + i] > probs[base + best]) best = i;
+        }
+        return new Prediction(best, probs[base + best], batchSize);
+    }
+
+    /**
+     * 停止工作线程；尚未处理的请求以取消结束
+     */
+    @Override
+    public void close() {
+        running = false;
+        for (Thread t : workers) {
+            t.interrupt();
+        }
+        for (Thread t : workers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.cancel(false);
+        }
+    }
+}
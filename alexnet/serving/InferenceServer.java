@@ -0,0 +1,188 @@
+package alexnet.serving;
+
+import alexnet.core.Tensor;
+import alexnet.data.DataLoader;
+import alexnet.network.AlexNet;
+import alexnet.network.Checkpoint;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 本地 HTTP 推理服务，只监听回环地址：
+ * <ul>
+ *     <li>POST /predict：请求体为一张 JPEG/PNG 图像，返回 {"label", "probability", "batchSize", "latencyMs"}；</li>
+ *     <li>GET /stats：最近请求的延迟分位数与平均批大小；</li>
+ *     <li>POST /reload：请求体为服务端本地的 checkpoint 路径，加载后原子切换权重，不中断服务。</li>
+ * </ul>
+ * 用法：java alexnet.serving.InferenceServer [checkpoint]，不给 checkpoint 时使用随机权重。
+ * 可用系统属性调整：alexnet.serve.port（8080）、alexnet.serve.workers（2）、
+ * alexnet.serve.maxBatch（8）、alexnet.serve.maxWaitMs（5）、alexnet.serve.queue（256）。
+ */
+public class InferenceServer implements AutoCloseable {
+    private static final int IMAGE_SIZE = 227;
+    private static final int CHANNELS = 3;
+    private static final long REQUEST_TIMEOUT_SECONDS = 30;
+
+    private final HttpServer http;
+    private final ExecutorService handlers;
+    private final DynamicBatcher batcher;
+
+    public InferenceServer(AlexNet model, int port, int workers, int maxBatch, long maxWaitMillis, int queueCapacity)
+            throws IOException {
+        this.batcher = new DynamicBatcher(model, workers, maxBatch, maxWaitMillis, queueCapacity,
+                CHANNELS, IMAGE_SIZE, IMAGE_SIZE);
+        this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // 处理线程只做解码并等待结果，计算在批处理线程上
+        this.handlers = Executors.newCachedThreadPool();
+        http.setExecutor(handlers);
+        http.createContext("/predict", this::predict);
+        http.createContext("/stats", this::stats);
+        http.createContext("/reload", this::reload);
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    public DynamicBatcher getBatcher() {
+        return batcher;
+    }
+
+    private void predict(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\":\"use POST\"}");
+                return;
+            }
+            BufferedImage img;
+            try (InputStream body = exchange.getRequestBody()) {
+                img = ImageIO.read(body);
+            }
+            if (img == null) {
+                respond(exchange, 400, "{\"error\":\"unsupported image\"}");
+                return;
+            }
+            Tensor image = DataLoader.toTensor(img, IMAGE_SIZE, IMAGE_SIZE, CHANNELS);
+
+            long start = System.nanoTime();
+            DynamicBatcher.Prediction p;
+            try {
+                p = batcher.submit(image).get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (IllegalStateException e) {
+                respond(exchange, 503, "{\"error\":\"" + escape(e.getMessage()) + "\"}");
+                return;
+            } catch (TimeoutException e) {
+                respond(exchange, 504, "{\"error\":\"timeout\"}");
+                return;
+            } catch (ExecutionException | InterruptedException e) {
+                respond(exchange, 500, "{\"error\":\"inference failed\"}");
+                return;
+            }
+            double millis = (System.nanoTime() - start) / 1e6;
+            respond(exchange, 200, String.format(Locale.ROOT,
+                    "{\"label\":%d,\"probability\":%.6f,\"batchSize\":%d,\"latencyMs\":%.3f}",
+                    p.label, p.probability, p.batchSize, millis));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        try {
+            LatencyRecorder.Summary s = batcher.latency();
+            respond(exchange, 200, String.format(Locale.ROOT,
+                    "{\"requests\":%d,\"p50Ms\":%.3f,\"p90Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f,\"meanBatch\":%.2f}",
+                    s.count, s.p50Millis, s.p90Millis, s.p99Millis, s.maxMillis, s.meanBatchSize));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void reload(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "{\"error\":\"use POST\"}");
+                return;
+            }
+            String path;
+            try (InputStream body = exchange.getRequestBody()) {
+                path = new String(body.readAllBytes(), StandardCharsets.UTF_8).trim();
+            }
+            try {
+                long start = System.nanoTime();
+                WeightSet next = batcher.reload(Paths.get(path));
+                respond(exchange, 200, String.format(Locale.ROOT, "{\"loaded\":\"%s\",\"loadMs\":%.1f}",
+                        escape(next.getSource()), (System.nanoTime() - start) / 1e6));
+            } catch (IOException | IllegalArgumentException e) {
+                respond(exchange, 400, "{\"error\":\"" + escape(String.valueOf(e.getMessage())) + "\"}");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        http.stop(0);
+        batcher.close();
+        handlers.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("alexnet.serve.port", 8080);
+        int workers = Integer.getInteger("alexnet.serve.workers", 2);
+        int maxBatch = Integer.getInteger("alexnet.serve.maxBatch", 8);
+        long maxWaitMs = Long.getLong("alexnet.serve.maxWaitMs", 5);
+        int queue = Integer.getInteger("alexnet.serve.queue", 256);
+
+        AlexNet model = args.length > 0 ? Checkpoint.load(Paths.get(args[0])) : new AlexNet();
+        InferenceServer server = new InferenceServer(model, port, workers, maxBatch, maxWaitMs, queue);
+        server.start();
+        System.out.printf("Serving on http://localhost:%d (workers=%d, maxBatch=%d, maxWait=%dms)%n",
+                server.getPort(), workers, maxBatch, maxWaitMs);
+
+        // 每 10 秒打印一次延迟分位数
+        while (true) {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                break;
+            }
+            System.out.println(server.getBatcher().latency());
+        }
+        server.close();
+    }
+}
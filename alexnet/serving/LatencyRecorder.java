@@ -0,0 +1,74 @@
+package alexnet.serving;
+
+import java.util.Arrays;
+
+/**
+ * 记录最近若干个请求的端到端延迟（从入队到结果就绪），按需计算分位数
+ */
+public class LatencyRecorder {
+    private final long[] samples;       // 环形缓冲区，单位纳秒
+    private long count;
+    private long batches;
+    private long batchedRequests;
+
+    public LatencyRecorder(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("窗口大小必须为正: " + window);
+        }
+        this.samples = new long[window];
+    }
+
+    public synchronized void record(long latencyNanos) {
+        samples[(int) (count % samples.length)] = latencyNanos;
+        count++;
+    }
+
+    public synchronized void recordBatch(int size) {
+        batches++;
+        batchedRequests += size;
+    }
+
+    /**
+     * 当前窗口内的延迟快照
+     */
+    public synchronized Summary summary() {
+        int n = (int) Math.min(count, samples.length);
+        long[] sorted = Arrays.copyOf(samples, n);
+        Arrays.sort(sorted);
+        double meanBatch = batches == 0 ? 0 : (double) batchedRequests / batches;
+        return new Summary(count, percentile(sorted, 0.50), percentile(sorted, 0.90),
+                percentile(sorted, 0.99), n == 0 ? 0 : sorted[n - 1] / 1e6, meanBatch);
+    }
+
+    // 最近秩法，结果单位毫秒
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, rank)] / 1e6;
+    }
+
+    public static class Summary {
+        public final long count;
+        public final double p50Millis;
+        public final double p90Millis;
+        public final double p99Millis;
+        public final double maxMillis;
+        public final double meanBatchSize;
+
+        Summary(long count, double p50Millis, double p90Millis, double p99Millis, double maxMillis, double meanBatchSize) {
+            this.count = count;
+            this.p50Millis = p50Millis;
+            this.p90Millis = p90Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+            this.meanBatchSize = meanBatchSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT,
+                    "requests=%d p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms meanBatch=%.2f",
+                    count, p50Millis, p90Millis, p99Millis, maxMillis, meanBatchSize);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package alexnet.serving;
+
+import alexnet.network.AlexNet;
+import alexnet.network.Checkpoint;
+import alexnet.network.ParameterLayer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一份发布后不再修改的完整参数，带引用计数。
+ * {@link WeightStore} 持有一个引用；每个正在计算的批在开始时 {@link #tryRetain()}、结束时 {@link #release()}。
+ * 被替换下来的权重在最后一个使用它的批结束后计数归零，不能再被获取，数组交给 GC 回收。
+ * <p>
+ * 不可变只是约定：这里的数组不会与训练中的模型共享，也没有人对它调用 update。
+ */
+public class WeightSet {
+    private final float[][][] parameters;   // [layer][parameter]
+    private final String source;
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    private WeightSet(float[][][] parameters, String source) {
+        this.parameters = parameters;
+        this.source = source;
+    }
+
+    /**
+     * 直接引用 net 当前的参数数组（不拷贝）；此后 net 不应再被训练
+     */
+    public static WeightSet of(AlexNet net, String source) {
+        List<ParameterLayer> layers = net.getParameterLayers();
+        float[][][] parameters = new float[layers.size()][][];
+        for (int i = 0; i < layers.size(); i++) {
+            parameters[i] = layers.get(i).getParameters();
+        }
+        return new WeightSet(parameters, source);
+    }
+
+    /**
+     * 把 checkpoint 读进新分配的数组，形状取自 template
+     */
+    public static WeightSet load(Path path, AlexNet template) throws IOException {
+        List<ParameterLayer> layers = template.getParameterLayers();
+        float[][][] parameters = new float[layers.size()][][];
+        int[][][] shapes = new int[layers.size()][][];
+        for (int l = 0; l < layers.size(); l++) {
+            float[][] params = layers.get(l).getParameters();
+            parameters[l] = new float[params.length][];
+            for (int p = 0; p < params.length; p++) {
+                parameters[l][p] = new float[params[p].length];
+            }
+            shapes[l] = layers.get(l).getParameterShapes();
+        }
+        Checkpoint.read(path, parameters, shapes);
+        return new WeightSet(parameters, path.toString());
+    }
+
+    /**
+     * 计数尚未归零时加一并返回 true；已经退役且没有使用者时返回 false
+     */
+    public boolean tryRetain() {
+        while (true) {
+            int r = refs.get();
+            if (r == 0) return false;
+            if (refs.compareAndSet(r, r + 1)) return true;
+        }
+    }
+
+    public void release() {
+        int r = refs.decrementAndGet();
+        if (r < 0) {
+            throw new IllegalStateException("WeightSet 被多释放了一次: " + source);
+        }
+    }
+
+    /**
+     * 是否已经退役且没有任何使用者
+     */
+    public boolean isDrained() {
+        return refs.get() == 0;
+    }
+
+    /**
+     * 让 replica 的各层改用这份参数（只换数组引用）
+     */
+    public void bind(AlexNet replica) {
+        List<ParameterLayer> layers = replica.getParameterLayers();
+        for (int i = 0; i < layers.size(); i++) {
+            layers.get(i).setParameters(parameters[i]);
+        }
+    }
+
+    public String getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,41 @@
+package alexnet.serving;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 当前生效的权重。{@link #swap} 原子地换上新权重：之后开始的批拿到新权重，
+ * 已经持有旧权重的批照常算完，旧权重在最后一个批释放后退役。全程不加锁。
+ */
+public class WeightStore {
+    private final AtomicReference<WeightSet> current;
+
+    public WeightStore(WeightSet initial) {
+        this.current = new AtomicReference<>(initial);
+    }
+
+    /**
+     * 获取当前权重的一个引用，用完必须 {@link WeightSet#release()}
+     */
+    public WeightSet acquire() {
+        while (true) {
+            WeightSet set = current.get();
+            // 读到的权重恰好在此刻被换下并放空时重试，下一次一定读到新的
+            if (set.tryRetain()) return set;
+        }
+    }
+
+    /**
+     * 换上 next 并交出对旧权重的引用
+     *
+     * @return 被换下的权重
+     */
+    public WeightSet swap(WeightSet next) {
+        WeightSet old = current.getAndSet(next);
+        old.release();
+        return old;
+    }
+
+    public WeightSet current() {
+        return current.get();
+    }
+}